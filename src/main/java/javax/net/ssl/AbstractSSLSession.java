@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A base class for {@link SSLSession} implementations which provides the application attribute methods.
+ * <p>
+ * Attributes are kept in an immutable table which is replaced with a compare-and-swap on each change, so reads and
+ * {@link #getValueNames()} never lock and writers never block each other.  {@link SSLSessionBindingEvent}s are only
+ * created when the old or new value is a {@link SSLSessionBindingListener}; a single event serves both callbacks.
+ */
+public abstract class AbstractSSLSession extends ExtendedSSLSession {
+
+    private static final AtomicReferenceFieldUpdater<AbstractSSLSession, Attributes> attributesUpdater = AtomicReferenceFieldUpdater.newUpdater(AbstractSSLSession.class, Attributes.class, "attributes");
+
+    private volatile Attributes attributes = Attributes.EMPTY;
+
+    protected AbstractSSLSession() {
+    }
+
+    public Object getValue(final String name) throws IllegalArgumentException {
+        if (name == null) throw new IllegalArgumentException();
+        return attributes.get(name);
+    }
+
+    public void putValue(final String name, final Object value) throws IllegalArgumentException {
+        if (name == null || value == null) throw new IllegalArgumentException();
+        Attributes oldAttributes, newAttributes;
+        Object oldValue;
+        do {
+            oldAttributes = attributes;
+            final int index = oldAttributes.indexOf(name);
+            oldValue = index == -1 ? null : oldAttributes.values[index];
+            newAttributes = oldAttributes.with(index, name, value);
+        } while (! attributesUpdater.compareAndSet(this, oldAttributes, newAttributes));
+        SSLSessionBindingEvent event = null;
+        if (oldValue instanceof SSLSessionBindingListener) {
+            event = new SSLSessionBindingEvent(this, name);
+            ((SSLSessionBindingListener) oldValue).valueUnbound(event);
+        }
+        if (value instanceof SSLSessionBindingListener) {
+            if (event == null) {
+                event = new SSLSessionBindingEvent(this, name);
+            }
+            ((SSLSessionBindingListener) value).valueBound(event);
+        }
+    }
+
+    public void removeValue(final String name) throws IllegalArgumentException {
+        if (name == null) throw new IllegalArgumentException();
+        Attributes oldAttributes;
+        int index;
+        do {
+            oldAttributes = attributes;
+            index = oldAttributes.indexOf(name);
+            if (index == -1) {
+                return;
+            }
+        } while (! attributesUpdater.compareAndSet(this, oldAttributes, oldAttributes.without(index)));
+        final Object oldValue = oldAttributes.values[index];
+        if (oldValue instanceof SSLSessionBindingListener) {
+            ((SSLSessionBindingListener) oldValue).valueUnbound(new SSLSessionBindingEvent(this, name));
+        }
+    }
+
+    public String[] getValueNames() {
+        final String[] names = attributes.names;
+        return names.length == 0 ? names : names.clone();
+    }
+
+    /**
+     * An immutable attribute table.  Small tables are searched linearly; larger ones carry a hash index.
+     */
+    static final class Attributes {
+        static final Attributes EMPTY = new Attributes(new String[0], new Object[0]);
+
+        private static final int INDEX_THRESHOLD = 8;
+
+        final String[] names;
+        final Object[] values;
+        private final HashMap<String, Integer> index;
+
+        Attributes(final String[] names, final Object[] values) {
+            this.names = names;
+            this.values = values;
+            if (names.length > INDEX_THRESHOLD) {
+                index = new HashMap<>(names.length * 2);
+                for (int i = 0; i < names.length; i ++) {
+                    index.put(names[i], Integer.valueOf(i));
+                }
+            } else {
+                index = null;
+            }
+        }
+
+        private Attributes(final String[] names, final Object[] values, final HashMap<String, Integer> index) {
+            this.names = names;
+            this.values = values;
+            this.index = index;
+        }
+
+        int indexOf(final String name) {
+            if (index != null) {
+                final Integer i = index.get(name);
+                return i == null ? -1 : i.intValue();
+            }
+            final String[] names = this.names;
+            for (int i = 0; i < names.length; i ++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Object get(final String name) {
+            final int i = indexOf(name);
+            return i == -1 ? null : values[i];
+        }
+
+        Attributes with(final int i, final String name, final Object value) {
+            if (i != -1) {
+                final Object[] newValues = values.clone();
+                newValues[i] = value;
+                // same names, same index
+                return new Attributes(names, newValues, index);
+            }
+            final int length = names.length;
+            final String[] newNames = Arrays.copyOf(names, length + 1);
+            final Object[] newValues = Arrays.copyOf(values, length + 1);
+            newNames[length] = name;
+            newValues[length] = value;
+            return new Attributes(newNames, newValues);
+        }
+
+        Attributes without(final int i) {
+            final int length = names.length;
+            if (length == 1) {
+                return EMPTY;
+            }
+            final String[] newNames = new String[length - 1];
+            final Object[] newValues = new Object[length - 1];
+            System.arraycopy(names, 0, newNames, 0, i);
+            System.arraycopy(values, 0, newValues, 0, i);
+            System.arraycopy(names, i + 1, newNames, i, length - i - 1);
+            System.arraycopy(values, i + 1, newValues, i, length - i - 1);
+            return new Attributes(newNames, newValues);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.net.Socket;
+import java.security.AlgorithmConstraints;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link X509ExtendedTrustManager} which remembers the chains its delegate accepted, so that a chain seen again
+ * is accepted without validating it again.
+ * <p>
+ * A result is keyed by the SHA-256 fingerprint of the chain, the direction, the authentication type, the algorithm
+ * constraints of the connection and the endpoint identification algorithm.  When that algorithm is set, it is also
+ * keyed by the names an identity can be checked against: the first SNI host name requested in the handshake session
+ * and the peer host of that session; without a handshake session, or with neither name, the result is not cached.
+ * A cached result is kept until the configured time to live passes or a certificate of the chain expires, whichever
+ * comes first; note that revocation is not checked again during that time.  Rejections are not remembered.  Once the
+ * cache is full, arbitrary entries make room for new ones.
+ */
+public final class CachingX509TrustManager extends X509ExtendedTrustManager {
+
+    private static final ThreadLocal<MessageDigest> digestCache = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final X509ExtendedTrustManager delegate;
+    private final int maxEntries;
+    private final long timeToLive;
+    private final ConcurrentHashMap<Key, Entry> cache = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingX509TrustManager(final X509ExtendedTrustManager delegate, final int maxEntries, final long timeToLive, final TimeUnit unit) {
+        if (delegate == null || unit == null) throw new NullPointerException();
+        if (maxEntries <= 0 || timeToLive <= 0) throw new IllegalArgumentException();
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.timeToLive = unit.toMillis(timeToLive);
+    }
+
+    public X509ExtendedTrustManager getDelegate() {
+        return delegate;
+    }
+
+    public void checkClientTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+        check(chain, authType, false, null, null, null);
+    }
+
+    public void checkServerTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+        check(chain, authType, true, null, null, null);
+    }
+
+    public void checkClientTrusted(final X509Certificate[] chain, final String authType, final Socket socket) throws CertificateException {
+        check(chain, authType, false, socket, null, socket instanceof SSLSocket ? ((SSLSocket) socket).getSSLParameters() : null);
+    }
+
+    public void checkServerTrusted(final X509Certificate[] chain, final String authType, final Socket socket) throws CertificateException {
+        check(chain, authType, true, socket, null, socket instanceof SSLSocket ? ((SSLSocket) socket).getSSLParameters() : null);
+    }
+
+    public void checkClientTrusted(final X509Certificate[] chain, final String authType, final SSLEngine engine) throws CertificateException {
+        check(chain, authType, false, null, engine, engine == null ? null : engine.getSSLParameters());
+    }
+
+    public void checkServerTrusted(final X509Certificate[] chain, final String authType, final SSLEngine engine) throws CertificateException {
+        check(chain, authType, true, null, engine, engine == null ? null : engine.getSSLParameters());
+    }
+
+    public X509Certificate[] getAcceptedIssuers() {
+        return delegate.getAcceptedIssuers();
+    }
+
+    /**
+     * Forget every remembered result.  Call this when the trust material or revocation state changes.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * Forget every remembered result for chains containing the given certificate.
+     */
+    public void invalidate(final X509Certificate certificate) {
+        if (certificate == null) throw new NullPointerException();
+        generation.incrementAndGet();
+        for (Iterator<Entry> iterator = cache.values().iterator(); iterator.hasNext(); ) {
+            for (X509Certificate member : iterator.next().chain) {
+                if (member.equals(certificate)) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private void check(final X509Certificate[] chain, final String authType, final boolean server, final Socket socket, final SSLEngine engine, final SSLParameters parameters) throws CertificateException {
+        if (chain == null || chain.length == 0 || authType == null || authType.isEmpty()) {
+            // let the delegate reject it
+            delegate(chain, authType, server, socket, engine);
+            return;
+        }
+        final String algorithm = parameters == null ? null : parameters.getEndpointIdentificationAlgorithm();
+        final String serverName;
+        final String peerHost;
+        if (algorithm == null || algorithm.isEmpty()) {
+            serverName = null;
+            peerHost = null;
+        } else {
+            // the names the delegate picks from, SNI first and then the peer host, exactly as it sees them
+            final SSLSession session = handshakeSession(socket, engine);
+            serverName = session == null ? null : HostnameMatcher.requestedHostName(session);
+            peerHost = session == null ? null : session.getPeerHost();
+            if (serverName == null && peerHost == null) {
+                // nothing to tie the result to
+                misses.increment();
+                delegate(chain, authType, server, socket, engine);
+                return;
+            }
+        }
+        final Key key = new Key(fingerprint(chain), server, authType, algorithm, serverName, peerHost, parameters == null ? null : parameters.getAlgorithmConstraints());
+        final long now = System.currentTimeMillis();
+        final Entry entry = cache.get(key);
+        if (entry != null) {
+            if (now < entry.expiry) {
+                hits.increment();
+                return;
+            }
+            cache.remove(key, entry);
+        }
+        misses.increment();
+        final long generation = this.generation.get();
+        delegate(chain, authType, server, socket, engine);
+        long expiry = now + timeToLive;
+        for (X509Certificate certificate : chain) {
+            expiry = Math.min(expiry, certificate.getNotAfter().getTime());
+        }
+        if (expiry <= now) {
+            return;
+        }
+        if (cache.size() >= maxEntries) {
+            makeRoom(now);
+        }
+        final Entry newEntry = new Entry(chain.clone(), expiry);
+        cache.put(key, newEntry);
+        if (this.generation.get() != generation) {
+            // invalidated while we were validating
+            cache.remove(key, newEntry);
+        }
+    }
+
+    private void delegate(final X509Certificate[] chain, final String authType, final boolean server, final Socket socket, final SSLEngine engine) throws CertificateException {
+        if (server) {
+            if (engine != null) {
+                delegate.checkServerTrusted(chain, authType, engine);
+            } else if (socket != null) {
+                delegate.checkServerTrusted(chain, authType, socket);
+            } else {
+                delegate.checkServerTrusted(chain, authType);
+            }
+        } else {
+            if (engine != null) {
+                delegate.checkClientTrusted(chain, authType, engine);
+            } else if (socket != null) {
+                delegate.checkClientTrusted(chain, authType, socket);
+            } else {
+                delegate.checkClientTrusted(chain, authType);
+            }
+        }
+    }
+
+    private void makeRoom(final long now) {
+        int excess = cache.size() - maxEntries + Math.max(1, maxEntries >> 4);
+        for (Iterator<Entry> iterator = cache.values().iterator(); iterator.hasNext(); ) {
+            final Entry entry = iterator.next();
+            if (now >= entry.expiry) {
+                iterator.remove();
+                excess--;
+            }
+        }
+        for (Iterator<Entry> iterator = cache.values().iterator(); excess > 0 && iterator.hasNext(); excess--) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static SSLSession handshakeSession(final Socket socket, final SSLEngine engine) {
+        if (engine != null) {
+            return engine.getHandshakeSession();
+        }
+        if (socket instanceof SSLSocket) {
+            return ((SSLSocket) socket).getHandshakeSession();
+        }
+        return null;
+    }
+
+    private static byte[] fingerprint(final X509Certificate[] chain) throws CertificateException {
+        final MessageDigest digest = digestCache.get();
+        for (X509Certificate certificate : chain) {
+            if (certificate instanceof InternedX509Certificate) {
+                digest.update(((InternedX509Certificate) certificate).getEncodedNoClone());
+            } else {
+                digest.update(certificate.getEncoded());
+            }
+        }
+        return digest.digest();
+    }
+
+    static final class Entry {
+        private final X509Certificate[] chain;
+        private final long expiry;
+
+        Entry(final X509Certificate[] chain, final long expiry) {
+            this.chain = chain;
+            this.expiry = expiry;
+        }
+    }
+
+    static final class Key {
+        private final byte[] fingerprint;
+        private final boolean server;
+        private final String authType;
+        private final String algorithm;
+        private final String serverName;
+        private final String peerHost;
+        private final AlgorithmConstraints constraints;
+        private final int hashCode;
+
+        Key(final byte[] fingerprint, final boolean server, final String authType, final String algorithm, final String serverName, final String peerHost, final AlgorithmConstraints constraints) {
+            this.fingerprint = fingerprint;
+            this.server = server;
+            this.authType = authType;
+            this.algorithm = algorithm;
+            this.serverName = serverName;
+            this.peerHost = peerHost;
+            this.constraints = constraints;
+            int hc = Arrays.hashCode(fingerprint);
+            hc = 31 * hc + (server ? 1 : 0);
+            hc = 31 * hc + authType.hashCode();
+            hc = 31 * hc + Objects.hashCode(algorithm);
+            hc = 31 * hc + Objects.hashCode(serverName);
+            hc = 31 * hc + Objects.hashCode(peerHost);
+            hc = 31 * hc + System.identityHashCode(constraints);
+            hashCode = hc;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && equals((Key) obj);
+        }
+
+        private boolean equals(final Key other) {
+            // constraints by identity, they have no equality of their own
+            return hashCode == other.hashCode && server == other.server && constraints == other.constraints && Arrays.equals(fingerprint, other.fingerprint) && authType.equals(other.authType) && Objects.equals(algorithm, other.algorithm) && Objects.equals(serverName, other.serverName) && Objects.equals(peerHost, other.peerHost);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A process-wide table of X.509 certificates keyed by their DER encoding, so that sessions presenting the same
+ * certificates (typically the intermediate CAs) share one instance instead of each holding a decoded copy.
+ * <p>
+ * The first time an encoding is interned only its DER framing is checked, which rejects PEM, truncated and trailing
+ * bytes without parsing the certificate.  It is decoded the first time anything but {@code getEncoded()},
+ * {@code equals} or {@code hashCode} is called; an encoding which is framed correctly but still does not decode
+ * surfaces as an {@link IllegalStateException} at that point.  Interned certificates are held weakly and leave the
+ * table when no session refers to them any more.
+ */
+public final class CertificateInterner {
+
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_BIT_STRING = 0x03;
+
+    private static final ConcurrentHashMap<SessionId, Entry> table = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<InternedX509Certificate> queue = new ReferenceQueue<>();
+
+    private static final ThreadLocal<CertificateFactory> factoryCache = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private CertificateInterner() {
+    }
+
+    /**
+     * Intern a DER-encoded certificate.
+     *
+     * @param encoded the DER encoding, which is copied if it is not interned yet
+     * @return the interned certificate
+     * @throws CertificateException if the encoding is not interned yet and is not framed as a DER-encoded certificate
+     */
+    public static X509Certificate intern(final byte[] encoded) throws CertificateException {
+        if (encoded == null) throw new NullPointerException();
+        return intern(encoded, true, null);
+    }
+
+    /**
+     * Intern a certificate.  Certificates of other types than X.509 are returned as they are.
+     *
+     * @param certificate the certificate
+     * @return the interned certificate
+     */
+    public static Certificate intern(final Certificate certificate) throws CertificateException {
+        if (certificate == null) throw new NullPointerException();
+        if (certificate instanceof InternedX509Certificate || ! (certificate instanceof X509Certificate)) {
+            return certificate;
+        }
+        return intern(certificate.getEncoded(), false, (X509Certificate) certificate);
+    }
+
+    /**
+     * Intern each certificate of a chain.
+     *
+     * @param chain the chain, or {@code null}
+     * @return a new array of interned certificates, or {@code null} if {@code chain} was {@code null}
+     */
+    public static Certificate[] intern(final Certificate[] chain) throws CertificateException {
+        if (chain == null) {
+            return null;
+        }
+        final Certificate[] interned = new Certificate[chain.length];
+        for (int i = 0; i < chain.length; i ++) {
+            interned[i] = intern(chain[i]);
+        }
+        return interned;
+    }
+
+    /**
+     * Intern an encoding which the caller hands over and will not modify.
+     */
+    static X509Certificate internOwned(final byte[] encoded) throws CertificateException {
+        return intern(encoded, false, null);
+    }
+
+    /**
+     * Get the number of certificates in the table.
+     */
+    public static int size() {
+        expunge();
+        return table.size();
+    }
+
+    private static X509Certificate intern(final byte[] encoded, final boolean copy, final X509Certificate decoded) throws CertificateException {
+        expunge();
+        final SessionId key = new SessionId(encoded);
+        Entry entry = table.get(key);
+        InternedX509Certificate certificate = entry == null ? null : entry.get();
+        if (certificate != null) {
+            return certificate;
+        }
+        if (decoded == null && ! isCertificate(encoded)) {
+            throw new CertificateException("Not a DER-encoded certificate");
+        }
+        final byte[] bytes = copy ? encoded.clone() : encoded;
+        final InternedX509Certificate created = new InternedX509Certificate(bytes, decoded);
+        final Entry newEntry = new Entry(new SessionId(bytes), created, queue);
+        for (;;) {
+            entry = table.putIfAbsent(newEntry.key, newEntry);
+            if (entry == null) {
+                return created;
+            }
+            certificate = entry.get();
+            if (certificate != null) {
+                return certificate;
+            }
+            // collected but not yet expunged
+            if (table.replace(entry.key, entry, newEntry)) {
+                return created;
+            }
+        }
+    }
+
+    static X509Certificate decode(final byte[] encoded) throws CertificateException {
+        return (X509Certificate) factoryCache.get().generateCertificate(new ByteArrayInputStream(encoded));
+    }
+
+    /**
+     * Check that an encoding is exactly one DER {@code Certificate}: a SEQUENCE of two SEQUENCEs (the TBS certificate
+     * and the signature algorithm) and a BIT STRING, with nothing after it.  The factory would also take PEM and
+     * ignore trailing bytes, either of which would break equals and hashCode.
+     */
+    static boolean isCertificate(final byte[] der) {
+        if (elementEnd(der, 0, TAG_SEQUENCE) != der.length) {
+            return false;
+        }
+        int offset = (der[1] & 0x80) == 0 ? 2 : 2 + (der[1] & 0x7f);
+        offset = elementEnd(der, offset, TAG_SEQUENCE);
+        offset = elementEnd(der, offset, TAG_SEQUENCE);
+        return elementEnd(der, offset, TAG_BIT_STRING) == der.length;
+    }
+
+    /**
+     * Get the offset just past the element with the given tag at {@code offset}, or -1 if there is no such element
+     * with a definite, minimally encoded length that fits.
+     */
+    private static int elementEnd(final byte[] der, final int offset, final int tag) {
+        if (offset < 0 || der.length - offset < 2 || (der[offset] & 0xff) != tag) {
+            return -1;
+        }
+        int pos = offset + 2;
+        int length = der[offset + 1] & 0xff;
+        if (length > 0x7f) {
+            final int count = length & 0x7f;
+            if (count == 0 || count > 4 || der.length - pos < count || der[pos] == 0) {
+                return -1;
+            }
+            length = 0;
+            for (int i = 0; i < count; i ++) {
+                length = length << 8 | der[pos ++] & 0xff;
+            }
+            // a negative length also fails here
+            if (length < 0x80) {
+                return -1;
+            }
+        }
+        return length > der.length - pos ? -1 : pos + length;
+    }
+
+    private static void expunge() {
+        Reference<? extends InternedX509Certificate> ref;
+        while ((ref = queue.poll()) != null) {
+            final Entry entry = (Entry) ref;
+            table.remove(entry.key, entry);
+        }
+    }
+
+    static final class Entry extends WeakReference<InternedX509Certificate> {
+        private final SessionId key;
+
+        Entry(final SessionId key, final InternedX509Certificate referent, final ReferenceQueue<InternedX509Certificate> queue) {
+            super(referent, queue);
+            this.key = key;
+        }
+    }
+}
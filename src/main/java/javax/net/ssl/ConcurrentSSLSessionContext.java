@@ -0,0 +1,412 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded, concurrent {@link SSLSessionContext} for use by providers.
+ * <p>
+ * Lookups never lock and never copy the session ID.  Updates are striped by session ID.  When the cache is full,
+ * new sessions first land in a small per-stripe admission window; on leaving it they must have been looked up or put
+ * more often than the main area's CLOCK victim (according to a TinyLFU frequency sketch, which records every
+ * access, misses included) to displace it.  Sessions expire
+ * {@link #getSessionTimeout()} seconds after their creation time, checked on lookup and swept by a per-stripe hashed
+ * timer wheel with one-second ticks.
+ */
+public class ConcurrentSSLSessionContext implements SSLSessionContext {
+
+    private static final int DEFAULT_TIMEOUT = 86400;
+    private static final int DEFAULT_CACHE_SIZE = 20480;
+
+    private static final int WHEEL_SIZE = 256;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final long TICK_MILLIS = 1000L;
+
+    private final ConcurrentHashMap<SessionId, Node> sessions = new ConcurrentHashMap<>();
+    private final Stripe[] stripes;
+    private final SessionStatistics statistics = new SessionStatistics(this, this::size);
+    private volatile int sessionTimeout;
+    private volatile int sessionCacheSize;
+    private volatile SSLSessionTicketManager ticketManager;
+    private volatile FrequencySketch sketch;
+    // racy on purpose, any stripe will do
+    private int sweepIndex;
+
+    public ConcurrentSSLSessionContext() {
+        this(DEFAULT_TIMEOUT, DEFAULT_CACHE_SIZE);
+    }
+
+    public ConcurrentSSLSessionContext(final int sessionTimeout, final int sessionCacheSize) throws IllegalArgumentException {
+        if (sessionTimeout < 0 || sessionCacheSize < 0) throw new IllegalArgumentException();
+        final int stripeCount = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors() * 2) - 1) << 1;
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i ++) {
+            stripes[i] = new Stripe();
+        }
+        this.sessionTimeout = sessionTimeout;
+        applySessionCacheSize(sessionCacheSize);
+    }
+
+    public SSLSession getSession(final byte[] sessionId) throws NullPointerException {
+        if (sessionId == null) throw new NullPointerException();
+        final SessionId id = new SessionId(sessionId);
+        // every access counts, so that a session which keeps missing can earn its way in once it is put
+        recordAccess(id);
+        final Node node = sessions.get(id);
+        if (node == null) {
+            statistics.miss();
+            return null;
+        }
+        final boolean expired = isExpired(node, System.currentTimeMillis());
+        if (expired || ! node.session.isValid()) {
+            if (stripeFor(node.id).remove(node) && expired) {
+                statistics.expiration();
+            }
+            statistics.miss();
+            return null;
+        }
+        statistics.hit();
+        node.referenced = true;
+        return node.session;
+    }
+
+    /**
+     * Add a session to this context, replacing any session with the same ID.
+     *
+     * @param session the session
+     * @throws IllegalArgumentException if the session has no ID
+     */
+    public void putSession(final SSLSession session) throws IllegalArgumentException {
+        if (session == null) throw new NullPointerException();
+        final byte[] id = session.getId();
+        if (id == null || id.length == 0) throw new IllegalArgumentException();
+        final Node node = new Node(new SessionId(id.clone()), session);
+        recordAccess(node.id);
+        final long now = System.currentTimeMillis();
+        final Stripe stripe = stripeFor(node.id);
+        stripe.add(node, now);
+        statistics.put();
+        // keep the wheels of quiet stripes turning too
+        final Stripe other = stripes[sweepIndex++ & stripes.length - 1];
+        if (other != stripe) {
+            other.sweep(now);
+        }
+    }
+
+    /**
+     * Remove the session with the given ID.
+     *
+     * @param sessionId the session ID
+     * @return {@code true} if a session was removed
+     */
+    public boolean removeSession(final byte[] sessionId) {
+        if (sessionId == null) throw new NullPointerException();
+        final Node node = sessions.get(new SessionId(sessionId));
+        return node != null && stripeFor(node.id).remove(node);
+    }
+
+    public Enumeration<byte[]> getIds() {
+        final long now = System.currentTimeMillis();
+        final List<byte[]> ids = new ArrayList<>(sessions.size());
+        for (Node node : sessions.values()) {
+            if (! isExpired(node, now) && node.session.isValid()) {
+                ids.add(node.id.getBytes().clone());
+            }
+        }
+        return Collections.enumeration(ids);
+    }
+
+    public void setSessionTimeout(final int seconds) throws IllegalArgumentException {
+        if (seconds < 0) throw new IllegalArgumentException();
+        sessionTimeout = seconds;
+        final long now = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            stripe.reschedule(now);
+        }
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    public void setSessionCacheSize(final int size) throws IllegalArgumentException {
+        if (size < 0) throw new IllegalArgumentException();
+        applySessionCacheSize(size);
+    }
+
+    private void applySessionCacheSize(final int size) {
+        synchronized (stripes) {
+            sessionCacheSize = size;
+            sketch = size == 0 ? null : new FrequencySketch(size);
+            final int stripeCapacity = size == 0 ? 0 : (size + stripes.length - 1) / stripes.length;
+            for (Stripe stripe : stripes) {
+                stripe.setCapacity(stripeCapacity);
+            }
+        }
+    }
+
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public SSLSessionContextStatistics getStatistics() {
+        return statistics;
+    }
+
+    public SSLSessionTicketManager getSessionTicketManager() {
+        return ticketManager;
+    }
+
+    public void setSessionTicketManager(final SSLSessionTicketManager ticketManager) {
+        this.ticketManager = ticketManager;
+    }
+
+    /**
+     * Get the number of sessions currently held, including any which have expired but not yet been swept.
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    private void recordAccess(final SessionId id) {
+        final FrequencySketch sketch = this.sketch;
+        if (sketch != null) {
+            sketch.increment(id.hashCode());
+        }
+    }
+
+    private boolean isExpired(final Node node, final long now) {
+        final int timeout = sessionTimeout;
+        return timeout != 0 && now - node.creationTime >= timeout * 1000L;
+    }
+
+    private Stripe stripeFor(final SessionId id) {
+        final int hashCode = id.hashCode();
+        return stripes[(hashCode ^ hashCode >>> 16) & stripes.length - 1];
+    }
+
+    static final class Node {
+        private final SessionId id;
+        private final SSLSession session;
+        private final long creationTime;
+        volatile boolean referenced;
+        // guarded by the stripe
+        boolean inWindow;
+        boolean removed;
+
+        Node(final SessionId id, final SSLSession session) {
+            this.id = id;
+            this.session = session;
+            creationTime = session.getCreationTime();
+        }
+    }
+
+    final class Stripe {
+        private final ArrayDeque<Node> window = new ArrayDeque<>();
+        private final ArrayDeque<Node> main = new ArrayDeque<>();
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private final ArrayDeque<Node>[] wheel = new ArrayDeque[WHEEL_SIZE];
+        private int capacity;
+        private int windowCapacity = 1;
+        private int windowCount;
+        private int mainCount;
+        private long tick;
+
+        Stripe() {
+            for (int i = 0; i < WHEEL_SIZE; i ++) {
+                wheel[i] = new ArrayDeque<>();
+            }
+        }
+
+        synchronized void add(final Node node, final long now) {
+            advance(now);
+            final Node old = sessions.put(node.id, node);
+            if (old != null) {
+                unlink(old);
+            }
+            node.inWindow = true;
+            window.addLast(node);
+            windowCount++;
+            schedule(node);
+            evict();
+        }
+
+        synchronized void sweep(final long now) {
+            advance(now);
+        }
+
+        synchronized boolean remove(final Node node) {
+            if (node.removed) {
+                return false;
+            }
+            sessions.remove(node.id, node);
+            unlink(node);
+            return true;
+        }
+
+        synchronized void setCapacity(final int capacity) {
+            this.capacity = capacity;
+            windowCapacity = Math.max(1, capacity / 100);
+            evict();
+        }
+
+        synchronized void reschedule(final long now) {
+            for (ArrayDeque<Node> bucket : wheel) {
+                bucket.clear();
+            }
+            tick = now / TICK_MILLIS;
+            for (Node node : window) {
+                if (! node.removed) schedule(node);
+            }
+            for (Node node : main) {
+                if (! node.removed) schedule(node);
+            }
+        }
+
+        private void unlink(final Node node) {
+            node.removed = true;
+            if (node.inWindow) {
+                windowCount--;
+                if (window.size() > (windowCount << 1) + 32) {
+                    window.removeIf(n -> n.removed);
+                }
+            } else {
+                mainCount--;
+                if (main.size() > (mainCount << 1) + 32) {
+                    main.removeIf(n -> n.removed);
+                }
+            }
+        }
+
+        private void evict() {
+            while (windowCount > windowCapacity) {
+                final Node candidate = pollLive(window);
+                windowCount--;
+                candidate.inWindow = false;
+                if (capacity == 0 || windowCount + mainCount < capacity) {
+                    main.addLast(candidate);
+                    mainCount++;
+                    continue;
+                }
+                final Node victim = clockVictim();
+                if (victim == null) {
+                    main.addLast(candidate);
+                    mainCount++;
+                    continue;
+                }
+                final FrequencySketch sketch = ConcurrentSSLSessionContext.this.sketch;
+                final Node winner, loser;
+                if (sketch == null || sketch.frequency(candidate.id.hashCode()) > sketch.frequency(victim.id.hashCode())) {
+                    winner = candidate;
+                    loser = victim;
+                } else {
+                    winner = victim;
+                    loser = candidate;
+                }
+                main.addLast(winner);
+                mainCount++;
+                loser.removed = true;
+                sessions.remove(loser.id, loser);
+                statistics.eviction();
+            }
+            // capacity may have been lowered
+            while (capacity != 0 && windowCount + mainCount > capacity) {
+                Node victim = clockVictim();
+                if (victim == null) {
+                    victim = pollLive(window);
+                    windowCount--;
+                }
+                victim.removed = true;
+                sessions.remove(victim.id, victim);
+                statistics.eviction();
+            }
+        }
+
+        private Node pollLive(final ArrayDeque<Node> queue) {
+            Node node;
+            do {
+                node = queue.pollFirst();
+            } while (node.removed);
+            return node;
+        }
+
+        private Node clockVictim() {
+            if (mainCount == 0) {
+                return null;
+            }
+            // give each referenced node a second chance, but don't spin forever against busy readers
+            for (int i = main.size(); ; i--) {
+                final Node node = main.pollFirst();
+                if (node.removed) {
+                    continue;
+                }
+                if (node.referenced && i > 0) {
+                    node.referenced = false;
+                    main.addLast(node);
+                    continue;
+                }
+                mainCount--;
+                return node;
+            }
+        }
+
+        private void schedule(final Node node) {
+            final int timeout = sessionTimeout;
+            if (timeout == 0) {
+                return;
+            }
+            final long deadlineTick = Math.max((node.creationTime + timeout * 1000L) / TICK_MILLIS, tick + 1);
+            wheel[(int) deadlineTick & WHEEL_MASK].addLast(node);
+        }
+
+        private void advance(final long now) {
+            final long target = now / TICK_MILLIS;
+            if (tick == 0) {
+                tick = target;
+                return;
+            }
+            final long from = Math.max(tick + 1, target - WHEEL_MASK);
+            for (long t = from; t <= target; t ++) {
+                tick = t;
+                final ArrayDeque<Node> bucket = wheel[(int) t & WHEEL_MASK];
+                for (int n = bucket.size(); n > 0; n --) {
+                    final Node node = bucket.pollFirst();
+                    if (node.removed) {
+                        continue;
+                    }
+                    if (isExpired(node, now)) {
+                        sessions.remove(node.id, node);
+                        unlink(node);
+                        statistics.expiration();
+                    } else {
+                        schedule(node);
+                    }
+                }
+            }
+        }
+    }
+}
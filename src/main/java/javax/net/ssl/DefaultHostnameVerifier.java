@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.net.ssl;
+
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+
+/**
+ * A {@link HostnameVerifier} checking the host name against the certificate of the peer, following RFC 6125; see
+ * {@link #matches(String, X509Certificate)}.  It is the default verifier of {@link HttpsURLConnection}.
+ * <p>
+ * Results are remembered in a value of the session, so that further requests over the same or a resumed session
+ * are answered without looking at the certificate again.
+ */
+public final class DefaultHostnameVerifier implements HostnameVerifier {
+
+    // a handful of names per session is all a client uses
+    private static final int MAX_RESULTS = 8;
+
+    private static final String RESULTS = DefaultHostnameVerifier.class.getName() + ".results";
+
+    public DefaultHostnameVerifier() {
+    }
+
+    public boolean verify(final String hostname, final SSLSession session) {
+        if (hostname == null || session == null) {
+            return false;
+        }
+        final Object value = session.getValue(RESULTS);
+        final Results results = value instanceof Results ? (Results) value : null;
+        if (results != null) {
+            final int idx = results.indexOf(hostname);
+            if (idx != -1) {
+                return results.matches[idx];
+            }
+        }
+        final Certificate[] certificates;
+        try {
+            certificates = session.getPeerCertificates();
+        } catch (SSLPeerUnverifiedException ignored) {
+            return false;
+        }
+        final boolean matches = certificates != null && certificates.length > 0 && certificates[0] instanceof X509Certificate && HostnameMatcher.matches(hostname, (X509Certificate) certificates[0]);
+        session.putValue(RESULTS, results == null ? new Results(hostname, matches) : results.with(hostname, matches));
+        return matches;
+    }
+
+    /**
+     * Determine whether a host name matches the identity of a certificate.
+     * <p>
+     * A host name which is an IP address literal, with or without brackets, matches IP address subject alternative
+     * names only.  Any other host name is compared, in its ASCII form and ignoring case, with the DNS subject
+     * alternative names of the certificate or, if it has none, the most specific common name of its subject.  A
+     * name starting with a {@code *} label matches a host name with any one label in its place, if at least two
+     * labels follow it.
+     *
+     * @param hostname the host name
+     * @param certificate the certificate
+     * @return {@code true} if the host name matches
+     */
+    public static boolean matches(final String hostname, final X509Certificate certificate) {
+        if (hostname == null || certificate == null) throw new NullPointerException();
+        return HostnameMatcher.matches(hostname, certificate);
+    }
+
+    /**
+     * The results of a session, replaced as a whole when a host name is added.
+     */
+    static final class Results {
+        private final String[] hostnames;
+        private final boolean[] matches;
+
+        Results(final String hostname, final boolean matches) {
+            this(new String[] { hostname }, new boolean[] { matches });
+        }
+
+        private Results(final String[] hostnames, final boolean[] matches) {
+            this.hostnames = hostnames;
+            this.matches = matches;
+        }
+
+        int indexOf(final String hostname) {
+            final String[] hostnames = this.hostnames;
+            for (int i = 0; i < hostnames.length; i ++) {
+                if (hostnames[i].equals(hostname)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Results with(final String hostname, final boolean match) {
+            final int length = Math.min(hostnames.length, MAX_RESULTS - 1);
+            final String[] newHostnames = new String[length + 1];
+            final boolean[] newMatches = new boolean[length + 1];
+            // the newest first, dropping the oldest once full
+            newHostnames[0] = hostname;
+            newMatches[0] = match;
+            System.arraycopy(hostnames, 0, newHostnames, 1, length);
+            System.arraycopy(matches, 0, newMatches, 1, length);
+            return new Results(newHostnames, newMatches);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * An {@link SSLSessionTicketKeyStore} in a local file.  The file holds the raw keys, so it is created readable by
+ * its owner only where the file system supports POSIX permissions.  It is replaced atomically when the keys change.
+ * <p>
+ * {@link #updateKeys(UnaryOperator)} holds an exclusive lock on a {@code .lock} file next to the key file, so that
+ * servers sharing the store do not lose each other's updates.
+ */
+public final class FileSSLSessionTicketKeyStore implements SSLSessionTicketKeyStore {
+
+    private static final int MAGIC = 0x4a53544b;
+    private static final int VERSION = 1;
+    // name, algorithm length, key length and activation time
+    private static final int MIN_ENTRY_SIZE = SSLSessionTicketKey.NAME_LENGTH + 2 + 2 + 8;
+
+    // file locks are held per process, so threads of this process are kept apart separately
+    private static final ConcurrentHashMap<Path, Object> processLocks = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Path lockFile;
+
+    public FileSSLSessionTicketKeyStore(final Path file) {
+        if (file == null) throw new NullPointerException();
+        this.file = file;
+        lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public List<SSLSessionTicketKey> loadKeys() throws IOException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return new ArrayList<>();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a session ticket key file: " + file);
+            }
+            final int count = in.readInt();
+            if (count < 0 || count > (channel.size() - 12) / MIN_ENTRY_SIZE) {
+                throw new IOException("Corrupt session ticket key file " + file);
+            }
+            final List<SSLSessionTicketKey> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i ++) {
+                final byte[] name = new byte[SSLSessionTicketKey.NAME_LENGTH];
+                in.readFully(name);
+                final String algorithm = in.readUTF();
+                final byte[] key = new byte[in.readUnsignedShort()];
+                in.readFully(key);
+                final long activationTime = in.readLong();
+                keys.add(new SSLSessionTicketKey(name, new SecretKeySpec(key, algorithm), activationTime));
+            }
+            return keys;
+        } catch (EOFException e) {
+            throw new IOException("Truncated session ticket key file " + file, e);
+        }
+    }
+
+    public void storeKeys(final List<SSLSessionTicketKey> keys) throws IOException {
+        if (keys == null) throw new NullPointerException();
+        final Path parent = file.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try {
+                Files.setPosixFilePermissions(temp, EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+            } catch (UnsupportedOperationException ignored) {
+                // not a POSIX file system
+            }
+            try (OutputStream stream = Files.newOutputStream(temp); DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(keys.size());
+                for (SSLSessionTicketKey key : keys) {
+                    final byte[] encoded = key.getKey().getEncoded();
+                    if (encoded == null || encoded.length > 0xffff) {
+                        throw new IOException("Session ticket key cannot be stored: " + key);
+                    }
+                    out.write(key.getNameNoClone());
+                    out.writeUTF(key.getKey().getAlgorithm());
+                    out.writeShort(encoded.length);
+                    out.write(encoded);
+                    out.writeLong(key.getActivationTime());
+                }
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public List<SSLSessionTicketKey> updateKeys(final UnaryOperator<List<SSLSessionTicketKey>> update) throws IOException {
+        if (update == null) throw new NullPointerException();
+        final Object processLock = processLocks.computeIfAbsent(lockFile.toAbsolutePath().normalize(), key -> new Object());
+        synchronized (processLock) {
+            try (FileChannel channel = openLockFile()) {
+                // released when the channel is closed
+                channel.lock();
+                final List<SSLSessionTicketKey> keys = loadKeys();
+                final List<SSLSessionTicketKey> updated = update.apply(keys);
+                if (updated != keys) {
+                    storeKeys(updated);
+                }
+                return updated;
+            }
+        }
+    }
+
+    private FileChannel openLockFile() throws IOException {
+        try {
+            return FileChannel.open(lockFile, EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE), PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+        } catch (UnsupportedOperationException ignored) {
+            // not a POSIX file system
+            return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch of 4-bit counters estimating how often a key was seen recently, TinyLFU style.  Counters are
+ * halved once the number of increments reaches ten times the table width, so old popularity fades.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    FrequencySketch(final int expectedSize) {
+        final int width = Integer.highestOneBit(Math.max(16, Math.min(expectedSize, 1 << 28)) - 1) << 1;
+        table = new AtomicLongArray(width);
+        mask = width - 1;
+        sampleSize = width * 10;
+    }
+
+    int frequency(final int hashCode) {
+        final int spread = spread(hashCode);
+        int frequency = 15;
+        for (int i = 0; i < 4; i ++) {
+            final int index = indexOf(spread, i);
+            final int offset = offsetOf(spread, i);
+            frequency = Math.min(frequency, (int) ((table.get(index) >>> offset) & 0xf));
+        }
+        return frequency;
+    }
+
+    void increment(final int hashCode) {
+        final int spread = spread(hashCode);
+        boolean added = false;
+        for (int i = 0; i < 4; i ++) {
+            added |= incrementAt(indexOf(spread, i), offsetOf(spread, i));
+        }
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(final int index, final int offset) {
+        final long mask = 0xfL << offset;
+        for (;;) {
+            final long value = table.get(index);
+            if ((value & mask) == mask) {
+                return false;
+            }
+            if (table.compareAndSet(index, value, value + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+    private void reset() {
+        synchronized (this) {
+            if (additions.get() < sampleSize) {
+                return;
+            }
+            for (int i = 0; i < table.length(); i ++) {
+                long value;
+                do {
+                    value = table.get(i);
+                } while (! table.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+            }
+            additions.set(0);
+        }
+    }
+
+    private int indexOf(final int spread, final int i) {
+        long hash = (spread + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> 32;
+        return (int) hash & mask;
+    }
+
+    private static int offsetOf(final int spread, final int i) {
+        // one of 16 nibbles per long, chosen differently for each row
+        return (((spread >>> (i << 3)) & 3) << 2) + (i << 4);
+    }
+
+    private static int spread(int hashCode) {
+        hashCode = ((hashCode >>> 16) ^ hashCode) * 0x45d9f3b;
+        hashCode = ((hashCode >>> 16) ^ hashCode) * 0x45d9f3b;
+        return (hashCode >>> 16) ^ hashCode;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.net.ssl;
+
+import java.net.IDN;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Matching of host names against the identities in a certificate, following RFC 6125.
+ * <p>
+ * A host name which is an IP address literal matches IP address subject alternative names only.  Any other host name
+ * matches the DNS names of the certificate, which are its DNS subject alternative names or, if it has none, the most
+ * specific common name of its subject.  A DNS name may start with a {@code *} label standing for exactly one label,
+ * provided it is followed by at least two labels; partial wildcards such as {@code w*.example.com} match nothing.
+ */
+final class HostnameMatcher {
+
+    private static final int DNS_NAME = 2;
+    private static final int IP_ADDRESS = 7;
+
+    private HostnameMatcher() {
+    }
+
+    static boolean matches(final String hostName, final X509Certificate certificate) {
+        String host = hostName;
+        if (host.length() > 2 && host.charAt(0) == '[' && host.charAt(host.length() - 1) == ']') {
+            host = host.substring(1, host.length() - 1);
+        }
+        final byte[] address = parseAddress(host);
+        if (address != null) {
+            return matchesAddress(address, certificate);
+        }
+        final String asciiHost = normalize(host);
+        if (asciiHost == null) {
+            return false;
+        }
+        for (String name : dnsNames(certificate)) {
+            if (matchesName(asciiHost, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the first host name the client requested through SNI in a handshake session.
+     *
+     * @return the ASCII host name, or {@code null} if there is none
+     */
+    static String requestedHostName(final SSLSession session) {
+        if (! (session instanceof ExtendedSSLSession)) {
+            return null;
+        }
+        final List<SNIServerName> names;
+        try {
+            names = ((ExtendedSSLSession) session).getRequestedServerNames();
+        } catch (UnsupportedOperationException ignored) {
+            return null;
+        }
+        if (names == null) {
+            return null;
+        }
+        for (SNIServerName name : names) {
+            if (name instanceof SNIHostName) {
+                return ((SNIHostName) name).getAsciiName();
+            }
+            if (name.getType() == StandardConstants.SNI_HOST_NAME) {
+                try {
+                    return new SNIHostName(name.getEncodedNoClone()).getAsciiName();
+                } catch (RuntimeException ignored) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean matchesName(final String asciiHost, final String name) {
+        final String pattern = normalize(name);
+        if (pattern == null) {
+            return false;
+        }
+        if (! pattern.startsWith("*.")) {
+            return pattern.indexOf('*') == -1 && pattern.equals(asciiHost);
+        }
+        final String suffix = pattern.substring(1);
+        if (suffix.indexOf('*') != -1 || suffix.indexOf('.', 1) == -1 || ! asciiHost.endsWith(suffix)) {
+            return false;
+        }
+        final int labelLength = asciiHost.length() - suffix.length();
+        return labelLength > 0 && asciiHost.lastIndexOf('.', labelLength - 1) == -1;
+    }
+
+    /**
+     * Get the lower case ASCII form of a name without its trailing dot, or {@code null} if it has none.
+     */
+    private static String normalize(final String name) {
+        String ascii = name;
+        for (int i = 0; i < name.length(); i ++) {
+            if (name.charAt(i) >= 0x80) {
+                try {
+                    ascii = IDN.toASCII(name);
+                } catch (IllegalArgumentException ignored) {
+                    return null;
+                }
+                break;
+            }
+        }
+        if (ascii.endsWith(".")) {
+            ascii = ascii.substring(0, ascii.length() - 1);
+        }
+        return ascii.isEmpty() ? null : ascii.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean matchesAddress(final byte[] address, final X509Certificate certificate) {
+        final Collection<List<?>> altNames;
+        try {
+            altNames = certificate.getSubjectAlternativeNames();
+        } catch (CertificateParsingException ignored) {
+            return false;
+        }
+        if (altNames != null) {
+            for (List<?> altName : altNames) {
+                if (altName.size() >= 2 && altName.get(0) instanceof Integer && ((Integer) altName.get(0)).intValue() == IP_ADDRESS && altName.get(1) instanceof String) {
+                    if (Arrays.equals(address, parseAddress((String) altName.get(1)))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse an IPv4 or IPv6 address literal, without ever resolving a name.
+     *
+     * @return the address, or {@code null} if the string is not an address literal
+     */
+    static byte[] parseAddress(final String host) {
+        if (host.indexOf(':') != -1) {
+            for (int i = 0; i < host.length(); i ++) {
+                final char c = host.charAt(i);
+                if (Character.digit(c, 16) == -1 && c != ':' && c != '.') {
+                    return null;
+                }
+            }
+            try {
+                // the brackets make sure the literal is never looked up as a name
+                return InetAddress.getByName("[" + host + "]").getAddress();
+            } catch (UnknownHostException ignored) {
+                return null;
+            }
+        }
+        final byte[] address = new byte[4];
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i <= host.length(); i ++) {
+            final char c = i == host.length() ? '.' : host.charAt(i);
+            if (c == '.') {
+                if (digits == 0 || part == 4) {
+                    return null;
+                }
+                address[part ++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 3) {
+                value = value * 10 + c - '0';
+                if (value > 255) {
+                    return null;
+                }
+                digits ++;
+            } else {
+                return null;
+            }
+        }
+        return part == 4 ? address : null;
+    }
+
+    static List<String> dnsNames(final X509Certificate certificate) {
+        final ArrayList<String> names = new ArrayList<>();
+        final Collection<List<?>> altNames;
+        try {
+            altNames = certificate.getSubjectAlternativeNames();
+        } catch (CertificateParsingException ignored) {
+            return names;
+        }
+        if (altNames != null) {
+            for (List<?> altName : altNames) {
+                if (altName.size() >= 2 && altName.get(0) instanceof Integer && ((Integer) altName.get(0)).intValue() == DNS_NAME && altName.get(1) instanceof String) {
+                    names.add((String) altName.get(1));
+                }
+            }
+        }
+        if (names.isEmpty()) {
+            final String commonName = commonName(certificate.getSubjectX500Principal());
+            if (commonName != null) {
+                names.add(commonName);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Get the value of the most specific common name of a principal, or {@code null} if it has none.
+     */
+    static String commonName(final X500Principal principal) {
+        // RFC 2253 puts the most specific RDN first
+        final String name = principal.getName(X500Principal.RFC2253);
+        final int length = name.length();
+        int i = 0;
+        while (i < length) {
+            final int start = i;
+            boolean quoted = false;
+            while (i < length) {
+                final char c = name.charAt(i);
+                if (c == '\\') {
+                    i += 2;
+                    continue;
+                }
+                if (c == '"') {
+                    quoted = ! quoted;
+                } else if (! quoted && (c == ',' || c == '+')) {
+                    break;
+                }
+                i ++;
+            }
+            final String attribute = name.substring(start, Math.min(i, length));
+            if (attribute.regionMatches(true, 0, "CN=", 0, 3)) {
+                final String value = unescape(attribute.substring(3));
+                return value.isEmpty() ? null : value;
+            }
+            i ++;
+        }
+        return null;
+    }
+
+    private static String unescape(final String value) {
+        if (value.startsWith("#")) {
+            // DER-encoded value, not a host name
+            return "";
+        }
+        if (value.indexOf('\\') == -1 && value.indexOf('"') == -1) {
+            return value;
+        }
+        final StringBuilder b = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i ++) {
+            final char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                b.append(value.charAt(++i));
+            } else if (c != '"') {
+                b.append(c);
+            }
+        }
+        return b.toString();
+    }
+}
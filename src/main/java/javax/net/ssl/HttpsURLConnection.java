@@ -29,11 +29,7 @@ public abstract class HttpsURLConnection extends HttpURLConnection {
 
     private static final SSLPermission SET_HOSTNAME_VERIFIER_PERMISSION = new SSLPermission("setHostnameVerifier");
 
-    private static volatile HostnameVerifier defaultHostnameVerifier = new HostnameVerifier() {
-        public boolean verify(final String hostname, final SSLSession session) {
-            return false;
-        }
-    };
+    private static volatile HostnameVerifier defaultHostnameVerifier = new DefaultHostnameVerifier();
     private static final AtomicReference<SSLSocketFactory> defaultSSLSocketFactoryRef = new AtomicReference<>();
 
     public static HostnameVerifier getDefaultHostnameVerifier() {
@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.CertPathParameters;
+import java.security.cert.Certificate;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * A {@link TrustManagerFactorySpi} for trust stores holding many anchors.  Its trust manager finds the anchor for a
+ * chain through an index by subject key identifier and subject name, and then runs PKIX validation against that
+ * anchor alone, so the cost of a check does not depend on the number of anchors.
+ * <p>
+ * It can be initialized with a key store, whose trusted certificate entries become the anchors, or with
+ * {@link CertPathTrustManagerProperties} holding {@link PKIXParameters}, whose anchors and settings are used.
+ * Revocation checking is off when initialized with a key store.
+ */
+public class IndexedTrustManagerFactorySpi extends TrustManagerFactorySpi {
+
+    private volatile IndexedX509TrustManager trustManager;
+
+    public IndexedTrustManagerFactorySpi() {
+    }
+
+    protected TrustManager[] engineGetTrustManagers() throws IllegalStateException {
+        final IndexedX509TrustManager trustManager = this.trustManager;
+        if (trustManager == null) throw new IllegalStateException("Not initialized");
+        return new TrustManager[] { trustManager };
+    }
+
+    protected void engineInit(final KeyStore keyStore) throws KeyStoreException {
+        if (keyStore == null) throw new KeyStoreException("A key store is required");
+        final List<X509Certificate> anchors = new ArrayList<>();
+        final Enumeration<String> aliases = keyStore.aliases();
+        while (aliases.hasMoreElements()) {
+            final String alias = aliases.nextElement();
+            if (keyStore.isCertificateEntry(alias)) {
+                final Certificate certificate = keyStore.getCertificate(alias);
+                if (certificate instanceof X509Certificate) {
+                    anchors.add((X509Certificate) certificate);
+                }
+            }
+        }
+        trustManager = new IndexedX509TrustManager(new TrustAnchorIndex(anchors), null);
+    }
+
+    protected void engineInit(final ManagerFactoryParameters spec) throws InvalidAlgorithmParameterException {
+        if (! (spec instanceof CertPathTrustManagerProperties)) {
+            throw new InvalidAlgorithmParameterException("Unsupported parameters " + spec);
+        }
+        final CertPathParameters parameters = ((CertPathTrustManagerProperties) spec).getParameters();
+        if (! (parameters instanceof PKIXParameters)) {
+            throw new InvalidAlgorithmParameterException("Only PKIX parameters are supported");
+        }
+        final PKIXParameters pkixParameters = (PKIXParameters) parameters;
+        final List<X509Certificate> anchors = new ArrayList<>();
+        for (TrustAnchor anchor : pkixParameters.getTrustAnchors()) {
+            if (anchor.getTrustedCert() == null) {
+                throw new InvalidAlgorithmParameterException("Trust anchors without a certificate are not supported");
+            }
+            anchors.add(anchor.getTrustedCert());
+        }
+        trustManager = new IndexedX509TrustManager(new TrustAnchorIndex(anchors), pkixParameters);
+    }
+}
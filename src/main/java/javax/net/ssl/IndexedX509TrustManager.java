@@ -0,0 +1,275 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.net.Socket;
+import java.security.AlgorithmConstraints;
+import java.security.CryptoPrimitive;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.PublicKey;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.PKIXCertPathChecker;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The trust manager of {@link IndexedTrustManagerFactorySpi}.
+ */
+final class IndexedX509TrustManager extends X509ExtendedTrustManager {
+
+    private static final String SERVER_AUTH = "1.3.6.1.5.5.7.3.1";
+    private static final String CLIENT_AUTH = "1.3.6.1.5.5.7.3.2";
+    private static final String ANY_EXTENDED_KEY_USAGE = "2.5.29.37.0";
+
+    private static final Set<CryptoPrimitive> SIGNATURE_PRIMITIVES = Collections.unmodifiableSet(EnumSet.of(CryptoPrimitive.SIGNATURE));
+
+    private static final ThreadLocal<CertificateFactory> factoryCache = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final ThreadLocal<CertPathValidator> validatorCache = ThreadLocal.withInitial(() -> {
+        try {
+            return CertPathValidator.getInstance("PKIX");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final TrustAnchorIndex index;
+    private final PKIXParameters template;
+
+    IndexedX509TrustManager(final TrustAnchorIndex index, final PKIXParameters template) {
+        this.index = index;
+        this.template = template;
+    }
+
+    public void checkClientTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+        check(chain, authType, false, null, null);
+    }
+
+    public void checkServerTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+        check(chain, authType, true, null, null);
+    }
+
+    public void checkClientTrusted(final X509Certificate[] chain, final String authType, final Socket socket) throws CertificateException {
+        check(chain, authType, false, socket instanceof SSLSocket ? ((SSLSocket) socket).getSSLParameters() : null, null);
+    }
+
+    public void checkServerTrusted(final X509Certificate[] chain, final String authType, final Socket socket) throws CertificateException {
+        final SSLSocket sslSocket = socket instanceof SSLSocket ? (SSLSocket) socket : null;
+        check(chain, authType, true, sslSocket == null ? null : sslSocket.getSSLParameters(), sslSocket == null ? null : sslSocket.getHandshakeSession());
+    }
+
+    public void checkClientTrusted(final X509Certificate[] chain, final String authType, final SSLEngine engine) throws CertificateException {
+        check(chain, authType, false, engine == null ? null : engine.getSSLParameters(), null);
+    }
+
+    public void checkServerTrusted(final X509Certificate[] chain, final String authType, final SSLEngine engine) throws CertificateException {
+        check(chain, authType, true, engine == null ? null : engine.getSSLParameters(), engine == null ? null : engine.getHandshakeSession());
+    }
+
+    public X509Certificate[] getAcceptedIssuers() {
+        return index.getAnchors();
+    }
+
+    private void check(final X509Certificate[] chain, final String authType, final boolean server, final SSLParameters parameters, final SSLSession session) throws CertificateException {
+        if (chain == null || chain.length == 0) throw new IllegalArgumentException("Empty chain");
+        if (authType == null || authType.isEmpty()) throw new IllegalArgumentException("Empty authentication type");
+        final String algorithm = parameters == null ? null : parameters.getEndpointIdentificationAlgorithm();
+        final AlgorithmConstraints constraints = parameters == null ? null : parameters.getAlgorithmConstraints();
+        if (algorithm != null && ! algorithm.isEmpty()) {
+            checkIdentity(chain[0], algorithm, server, session);
+        }
+        checkExtendedKeyUsage(chain[0], server);
+        // the chain may run up to and including an anchor
+        int length = chain.length;
+        for (int i = 0; i < chain.length; i ++) {
+            if (index.isAnchor(chain[i])) {
+                if (i == 0) {
+                    checkTrustedLeaf(chain[0], constraints);
+                    return;
+                }
+                validate(chain, i, chain[i], constraints);
+                return;
+            }
+        }
+        final List<X509Certificate> issuers = index.findIssuers(chain[length - 1]);
+        CertificateException failure = null;
+        for (X509Certificate issuer : issuers) {
+            try {
+                validate(chain, length, issuer, constraints);
+                return;
+            } catch (CertificateException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        throw new CertificateException("No trusted certificate found for " + chain[length - 1].getIssuerX500Principal());
+    }
+
+    private void validate(final X509Certificate[] chain, final int length, final X509Certificate anchor, final AlgorithmConstraints constraints) throws CertificateException {
+        try {
+            final PKIXParameters parameters;
+            if (template == null) {
+                parameters = new PKIXParameters(Collections.singleton(new TrustAnchor(anchor, null)));
+                parameters.setRevocationEnabled(false);
+            } else {
+                parameters = (PKIXParameters) template.clone();
+                parameters.setTrustAnchors(Collections.singleton(new TrustAnchor(anchor, null)));
+            }
+            if (constraints != null) {
+                parameters.addCertPathChecker(new ConstraintsChecker(constraints, anchor.getPublicKey()));
+            }
+            validatorCache.get().validate(factoryCache.get().generateCertPath(Arrays.asList(chain).subList(0, length)), parameters);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new CertificateException(e);
+        } catch (GeneralSecurityException e) {
+            throw e instanceof CertificateException ? (CertificateException) e : new CertificateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Check a leaf which is itself an anchor.  There is no path to validate, but it must still be within its validity
+     * period and its key must be permitted by the algorithm constraints.
+     */
+    private void checkTrustedLeaf(final X509Certificate leaf, final AlgorithmConstraints constraints) throws CertificateException {
+        final Date date = template == null ? null : template.getDate();
+        leaf.checkValidity(date == null ? new Date() : date);
+        if (constraints != null) {
+            try {
+                new ConstraintsChecker(constraints, leaf.getPublicKey()).init(false);
+            } catch (CertPathValidatorException e) {
+                throw new CertificateException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Check the identity of a server against the name the client asked for, or the host it connected to.  Client
+     * identities are not checked.
+     */
+    private static void checkIdentity(final X509Certificate certificate, final String algorithm, final boolean server, final SSLSession session) throws CertificateException {
+        if (! algorithm.equalsIgnoreCase("HTTPS") && ! algorithm.equalsIgnoreCase("LDAPS") && ! algorithm.equalsIgnoreCase("LDAP")) {
+            throw new CertificateException("Endpoint identification algorithm " + algorithm + " is not supported");
+        }
+        if (! server) {
+            return;
+        }
+        String hostname = null;
+        if (session instanceof ExtendedSSLSession) {
+            try {
+                for (SNIServerName name : ((ExtendedSSLSession) session).getRequestedServerNames()) {
+                    if (name instanceof SNIHostName) {
+                        hostname = ((SNIHostName) name).getAsciiName();
+                        break;
+                    }
+                }
+            } catch (UnsupportedOperationException ignored) {
+                // fall back to the peer host
+            }
+        }
+        if (hostname == null && session != null) {
+            hostname = session.getPeerHost();
+        }
+        if (hostname == null) {
+            throw new CertificateException("No host name to identify the server by");
+        }
+        if (! HostnameMatcher.matches(hostname, certificate)) {
+            throw new CertificateException("No name matching " + hostname + " found");
+        }
+    }
+
+    private static void checkExtendedKeyUsage(final X509Certificate certificate, final boolean server) throws CertificateException {
+        final List<String> usages;
+        try {
+            usages = certificate.getExtendedKeyUsage();
+        } catch (CertificateParsingException e) {
+            throw new CertificateException(e);
+        }
+        if (usages != null && ! usages.contains(ANY_EXTENDED_KEY_USAGE) && ! usages.contains(server ? SERVER_AUTH : CLIENT_AUTH)) {
+            throw new CertificateException("Extended key usage does not permit " + (server ? "server" : "client") + " authentication");
+        }
+    }
+
+    /**
+     * Checks the signature algorithm and keys of each certificate against the algorithm constraints of a connection,
+     * working from the anchor towards the end entity.
+     */
+    static final class ConstraintsChecker extends PKIXCertPathChecker {
+        private final AlgorithmConstraints constraints;
+        private final PublicKey anchorKey;
+        private PublicKey issuerKey;
+
+        ConstraintsChecker(final AlgorithmConstraints constraints, final PublicKey anchorKey) {
+            this.constraints = constraints;
+            this.anchorKey = anchorKey;
+        }
+
+        public void init(final boolean forward) throws CertPathValidatorException {
+            if (forward) {
+                throw new CertPathValidatorException("Forward checking is not supported");
+            }
+            if (! constraints.permits(SIGNATURE_PRIMITIVES, anchorKey)) {
+                throw new CertPathValidatorException("Trust anchor key " + anchorKey.getAlgorithm() + " is not permitted by the algorithm constraints");
+            }
+            issuerKey = anchorKey;
+        }
+
+        public boolean isForwardCheckingSupported() {
+            return false;
+        }
+
+        public Set<String> getSupportedExtensions() {
+            return null;
+        }
+
+        public void check(final Certificate cert, final Collection<String> unresolvedCritExts) throws CertPathValidatorException {
+            final X509Certificate certificate = (X509Certificate) cert;
+            final String signatureAlgorithm = certificate.getSigAlgName();
+            if (! constraints.permits(SIGNATURE_PRIMITIVES, signatureAlgorithm, null) || ! constraints.permits(SIGNATURE_PRIMITIVES, signatureAlgorithm, issuerKey, null)) {
+                throw new CertPathValidatorException("Signature algorithm " + signatureAlgorithm + " is not permitted by the algorithm constraints");
+            }
+            final PublicKey key = certificate.getPublicKey();
+            if (! constraints.permits(SIGNATURE_PRIMITIVES, key)) {
+                throw new CertPathValidatorException("Key " + key.getAlgorithm() + " is not permitted by the algorithm constraints");
+            }
+            issuerKey = key;
+        }
+    }
+}
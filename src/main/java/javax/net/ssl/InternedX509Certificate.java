@@ -0,0 +1,224 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Principal;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * An X.509 certificate shared through {@link CertificateInterner}.  It keeps the encoding it was interned under, so
+ * that it can be compared and hashed, and handed to digests, without copying, and is decoded the first time anything
+ * else is asked for.
+ */
+final class InternedX509Certificate extends X509Certificate {
+
+    private static final long serialVersionUID = -2475282358745618424L;
+
+    private final byte[] encoded;
+    private final int hashCode;
+    private transient volatile X509Certificate decoded;
+
+    InternedX509Certificate(final byte[] encoded, final X509Certificate decoded) {
+        this.encoded = encoded;
+        hashCode = Arrays.hashCode(encoded);
+        this.decoded = decoded;
+    }
+
+    byte[] getEncodedNoClone() {
+        return encoded;
+    }
+
+    private X509Certificate certificate() {
+        X509Certificate decoded = this.decoded;
+        if (decoded == null) {
+            try {
+                // racing threads decode twice at worst
+                this.decoded = decoded = CertificateInterner.decode(encoded);
+            } catch (CertificateException e) {
+                throw new IllegalStateException("Interned certificate cannot be decoded", e);
+            }
+        }
+        return decoded;
+    }
+
+    public byte[] getEncoded() throws CertificateEncodingException {
+        return encoded.clone();
+    }
+
+    public boolean equals(final Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (other instanceof InternedX509Certificate) {
+            final InternedX509Certificate interned = (InternedX509Certificate) other;
+            return hashCode == interned.hashCode && Arrays.equals(encoded, interned.encoded);
+        }
+        return super.equals(other);
+    }
+
+    public int hashCode() {
+        // same as Certificate.hashCode(), which hashes the encoding
+        return hashCode;
+    }
+
+    public void checkValidity() throws CertificateExpiredException, CertificateNotYetValidException {
+        certificate().checkValidity();
+    }
+
+    public void checkValidity(final Date date) throws CertificateExpiredException, CertificateNotYetValidException {
+        certificate().checkValidity(date);
+    }
+
+    public int getVersion() {
+        return certificate().getVersion();
+    }
+
+    public BigInteger getSerialNumber() {
+        return certificate().getSerialNumber();
+    }
+
+    @SuppressWarnings("deprecation")
+    public Principal getIssuerDN() {
+        return certificate().getIssuerDN();
+    }
+
+    public X500Principal getIssuerX500Principal() {
+        return certificate().getIssuerX500Principal();
+    }
+
+    @SuppressWarnings("deprecation")
+    public Principal getSubjectDN() {
+        return certificate().getSubjectDN();
+    }
+
+    public X500Principal getSubjectX500Principal() {
+        return certificate().getSubjectX500Principal();
+    }
+
+    public Date getNotBefore() {
+        return certificate().getNotBefore();
+    }
+
+    public Date getNotAfter() {
+        return certificate().getNotAfter();
+    }
+
+    public byte[] getTBSCertificate() throws CertificateEncodingException {
+        return certificate().getTBSCertificate();
+    }
+
+    public byte[] getSignature() {
+        return certificate().getSignature();
+    }
+
+    public String getSigAlgName() {
+        return certificate().getSigAlgName();
+    }
+
+    public String getSigAlgOID() {
+        return certificate().getSigAlgOID();
+    }
+
+    public byte[] getSigAlgParams() {
+        return certificate().getSigAlgParams();
+    }
+
+    public boolean[] getIssuerUniqueID() {
+        return certificate().getIssuerUniqueID();
+    }
+
+    public boolean[] getSubjectUniqueID() {
+        return certificate().getSubjectUniqueID();
+    }
+
+    public boolean[] getKeyUsage() {
+        return certificate().getKeyUsage();
+    }
+
+    public List<String> getExtendedKeyUsage() throws CertificateParsingException {
+        return certificate().getExtendedKeyUsage();
+    }
+
+    public int getBasicConstraints() {
+        return certificate().getBasicConstraints();
+    }
+
+    public Collection<List<?>> getSubjectAlternativeNames() throws CertificateParsingException {
+        return certificate().getSubjectAlternativeNames();
+    }
+
+    public Collection<List<?>> getIssuerAlternativeNames() throws CertificateParsingException {
+        return certificate().getIssuerAlternativeNames();
+    }
+
+    public void verify(final PublicKey key) throws CertificateException, NoSuchAlgorithmException, InvalidKeyException, NoSuchProviderException, SignatureException {
+        certificate().verify(key);
+    }
+
+    public void verify(final PublicKey key, final String sigProvider) throws CertificateException, NoSuchAlgorithmException, InvalidKeyException, NoSuchProviderException, SignatureException {
+        certificate().verify(key, sigProvider);
+    }
+
+    public void verify(final PublicKey key, final Provider sigProvider) throws CertificateException, NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        certificate().verify(key, sigProvider);
+    }
+
+    public PublicKey getPublicKey() {
+        return certificate().getPublicKey();
+    }
+
+    public boolean hasUnsupportedCriticalExtension() {
+        return certificate().hasUnsupportedCriticalExtension();
+    }
+
+    public Set<String> getCriticalExtensionOIDs() {
+        return certificate().getCriticalExtensionOIDs();
+    }
+
+    public Set<String> getNonCriticalExtensionOIDs() {
+        return certificate().getNonCriticalExtensionOIDs();
+    }
+
+    public byte[] getExtensionValue(final String oid) {
+        return certificate().getExtensionValue(oid);
+    }
+
+    public String toString() {
+        return certificate().toString();
+    }
+}
@@ -46,12 +46,9 @@ public class KeyManagerFactory {
 
     public static KeyManagerFactory getInstance(String algorithm) throws NoSuchAlgorithmException, NullPointerException {
         if (algorithm == null) throw new NullPointerException();
-        final Provider[] providers = Security.getProviders();
-        for (Provider provider : providers) {
-            final Provider.Service service = provider.getService("KeyManagerFactory", algorithm);
-            if (service != null) {
-                return new KeyManagerFactory((KeyManagerFactorySpi) service.newInstance(null), provider, algorithm);
-            }
+        final ServiceCache.Entry entry = ServiceCache.find("KeyManagerFactory", algorithm);
+        if (entry != null) {
+            return new KeyManagerFactory((KeyManagerFactorySpi) entry.newInstance(), entry.getProvider(), algorithm);
         }
         throw new NoSuchAlgorithmException();
     }
@@ -59,18 +56,18 @@ public class KeyManagerFactory {
         if (algorithm == null || providerName == null) throw new NullPointerException();
         final Provider provider = Security.getProvider(providerName);
         if (provider == null) throw new NoSuchProviderException();
-        final Provider.Service service = provider.getService("KeyManagerFactory", algorithm);
-        if (service != null) {
-            return new KeyManagerFactory((KeyManagerFactorySpi) service.newInstance(null), provider, algorithm);
+        final ServiceCache.Entry entry = ServiceCache.find("KeyManagerFactory", algorithm, provider);
+        if (entry != null) {
+            return new KeyManagerFactory((KeyManagerFactorySpi) entry.newInstance(), provider, algorithm);
         }
         throw new NoSuchAlgorithmException();
     }
     public static KeyManagerFactory getInstance(String algorithm, Provider provider) throws NoSuchAlgorithmException, NullPointerException, IllegalArgumentException {
         if (algorithm == null) throw new NullPointerException();
         if (provider == null) throw new IllegalArgumentException();
-        final Provider.Service service = provider.getService("KeyManagerFactory", algorithm);
-        if (service != null) {
-            return new KeyManagerFactory((KeyManagerFactorySpi) service.newInstance(null), provider, algorithm);
+        final ServiceCache.Entry entry = ServiceCache.find("KeyManagerFactory", algorithm, provider);
+        if (entry != null) {
+            return new KeyManagerFactory((KeyManagerFactorySpi) entry.newInstance(), provider, algorithm);
         }
         throw new NoSuchAlgorithmException();
     }
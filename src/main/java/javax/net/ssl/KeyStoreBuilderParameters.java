@@ -19,9 +19,13 @@
 package javax.net.ssl;
 
 import java.security.KeyStore;
+import java.security.KeyStoreException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
@@ -43,4 +47,53 @@ public class KeyStoreBuilderParameters implements ManagerFactoryParameters {
     public List<KeyStore.Builder> getParameters() {
         return parameters;
     }
+
+    /**
+     * Get the key store of every builder, loading them in parallel.  Loading a key store is typically dominated by
+     * password-based key derivation, so the whole list takes about as long as the slowest key store.  The first
+     * failure cancels the loads which have not started yet.
+     *
+     * @param pool the pool to load on
+     * @return the key stores, in the order of the builders
+     * @throws KeyStoreException if a key store could not be loaded
+     */
+    public List<KeyStore> loadKeyStores(final ForkJoinPool pool) throws KeyStoreException {
+        if (pool == null) throw new NullPointerException();
+        final List<KeyStore.Builder> parameters = this.parameters;
+        if (parameters.size() == 1) {
+            return Collections.singletonList(parameters.get(0).getKeyStore());
+        }
+        final List<ForkJoinTask<KeyStore>> tasks = new ArrayList<>(parameters.size());
+        for (KeyStore.Builder builder : parameters) {
+            tasks.add(pool.submit(builder::getKeyStore));
+        }
+        final List<KeyStore> keyStores = new ArrayList<>(tasks.size());
+        try {
+            for (ForkJoinTask<KeyStore> task : tasks) {
+                keyStores.add(task.get());
+            }
+        } catch (ExecutionException e) {
+            cancel(tasks);
+            Throwable cause = e.getCause();
+            // adapted callables wrap checked exceptions
+            if (cause instanceof RuntimeException && cause.getCause() instanceof KeyStoreException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof KeyStoreException) {
+                throw (KeyStoreException) cause;
+            }
+            throw new KeyStoreException(cause);
+        } catch (InterruptedException e) {
+            cancel(tasks);
+            Thread.currentThread().interrupt();
+            throw new KeyStoreException("Interrupted while loading key stores", e);
+        }
+        return keyStores;
+    }
+
+    private static void cancel(final List<ForkJoinTask<KeyStore>> tasks) {
+        for (ForkJoinTask<KeyStore> task : tasks) {
+            task.cancel(false);
+        }
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a value built from a key store file up to date.  The value is replaced in one volatile write, so readers never
+ * wait for a reload and never see a half-built value.
+ */
+final class KeyStoreWatcher<T> {
+
+    private final ReloadableKeyStoreParameters parameters;
+    private final Loader<T> loader;
+    private final ScheduledFuture<?> task;
+    private volatile T current;
+    private volatile Stamp stamp;
+    private volatile Stamp failedStamp;
+    private volatile Exception lastFailure;
+    private volatile long reloadCount;
+
+    KeyStoreWatcher(final ReloadableKeyStoreParameters parameters, final Loader<T> loader) throws GeneralSecurityException, IOException {
+        this.parameters = parameters;
+        this.loader = loader;
+        // the first load happens on the caller's thread, so that broken material fails initialization
+        stamp = Stamp.of(parameters);
+        current = loader.load(parameters.newBuilderParameters());
+        final long period = parameters.getPeriod(TimeUnit.MILLISECONDS);
+        task = parameters.getExecutor().scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    T get() {
+        return current;
+    }
+
+    Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    long getReloadCount() {
+        return reloadCount;
+    }
+
+    void close() {
+        task.cancel(false);
+    }
+
+    /**
+     * Load the file now, whether or not it changed.
+     */
+    synchronized void reload() throws GeneralSecurityException, IOException {
+        final Stamp stamp = Stamp.of(parameters);
+        current = loader.load(parameters.newBuilderParameters());
+        this.stamp = stamp;
+        lastFailure = null;
+        reloadCount++;
+    }
+
+    private void check() {
+        Stamp current = null;
+        try {
+            current = Stamp.of(parameters);
+            if (! current.equals(stamp) && (failedStamp == null || ! current.equals(failedStamp))) {
+                reload();
+            }
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            // keep serving the old material; a half-written file changes again once complete
+            lastFailure = e;
+            failedStamp = current;
+        }
+    }
+
+    interface Loader<T> {
+        T load(KeyStoreBuilderParameters parameters) throws GeneralSecurityException, IOException;
+    }
+
+    static final class Stamp {
+        private final FileTime lastModified;
+        private final long size;
+        private final Object fileKey;
+
+        Stamp(final FileTime lastModified, final long size, final Object fileKey) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.fileKey = fileKey;
+        }
+
+        static Stamp of(final ReloadableKeyStoreParameters parameters) throws IOException {
+            // follows links, so a swapped symlink (as with mounted secrets) counts as a change
+            final BasicFileAttributes attributes = Files.readAttributes(parameters.getFile(), BasicFileAttributes.class);
+            return new Stamp(attributes.lastModifiedTime(), attributes.size(), attributes.fileKey());
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Stamp && equals((Stamp) obj);
+        }
+
+        private boolean equals(final Stamp other) {
+            return size == other.size && lastModified.equals(other.lastModified) && Objects.equals(fileKey, other.fileKey);
+        }
+
+        public int hashCode() {
+            return Objects.hash(lastModified, Long.valueOf(size), fileKey);
+        }
+    }
+}
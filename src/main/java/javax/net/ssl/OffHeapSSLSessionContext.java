@@ -0,0 +1,660 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+import javax.crypto.SecretKey;
+
+/**
+ * An {@link SSLSessionContext} which keeps sessions in serialized form (see {@link SSLSessionState}) in direct
+ * memory, so that millions of resumable sessions cost the garbage collector next to nothing.
+ * <p>
+ * Each stripe owns a fixed number of fixed-size slots in one direct buffer, an open-addressing index of slot numbers
+ * and a CLOCK hand for eviction.  Peer certificate chains are kept once on the heap, reference counted, and stored
+ * in the slots by SHA-256 reference.  {@link #getSession(byte[])} decodes the slot and asks the
+ * {@link SessionFactory} for a session view each time.
+ * <p>
+ * The live sessions can be written to an encrypted snapshot file (see {@link #writeSnapshot(Path, SecretKey)}) and a
+ * snapshot memory-mapped back after a restart (see {@link #restoreSnapshot(Path, SecretKey)}).  Restored sessions are
+ * decrypted and moved into the cache one by one, the first time they are looked up.
+ */
+public class OffHeapSSLSessionContext implements SSLSessionContext {
+
+    private static final int DEFAULT_TIMEOUT = 86400;
+    private static final int DEFAULT_SLOT_SIZE = 256;
+    // slot header: encoded length
+    private static final int SLOT_HEADER = 2;
+
+    private final SessionFactory sessionFactory;
+    private final int slotSize;
+    private final int capacity;
+    private final Stripe[] stripes;
+    private final ChainRegistry chains = new ChainRegistry();
+    private final SessionStatistics statistics = new SessionStatistics(this, this::size);
+    private volatile int sessionTimeout = DEFAULT_TIMEOUT;
+    private volatile int sessionCacheSize;
+    private volatile SSLSessionTicketManager ticketManager;
+    private volatile SessionSnapshot snapshot;
+
+    public OffHeapSSLSessionContext(final int capacity, final SessionFactory sessionFactory) {
+        this(capacity, DEFAULT_SLOT_SIZE, sessionFactory);
+    }
+
+    public OffHeapSSLSessionContext(final int capacity, final int slotSize, final SessionFactory sessionFactory) {
+        if (sessionFactory == null) throw new NullPointerException();
+        if (capacity <= 0 || slotSize < 64 || slotSize > 65535) throw new IllegalArgumentException();
+        this.sessionFactory = sessionFactory;
+        this.slotSize = slotSize;
+        final int maxStripeSlots = Integer.MAX_VALUE / slotSize;
+        int stripeCount = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors() * 2) - 1) << 1;
+        while (stripeCount > 1 && capacity / stripeCount < 64) {
+            stripeCount >>= 1;
+        }
+        final int stripeSlots = (capacity + stripeCount - 1) / stripeCount;
+        if (stripeSlots > maxStripeSlots) throw new IllegalArgumentException();
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i ++) {
+            stripes[i] = new Stripe(stripeSlots);
+        }
+        this.capacity = stripeSlots * stripeCount;
+    }
+
+    public SSLSession getSession(final byte[] sessionId) throws NullPointerException {
+        if (sessionId == null) throw new NullPointerException();
+        final SSLSessionState state = getSessionState(sessionId);
+        return state == null ? null : sessionFactory.createSession(state, this);
+    }
+
+    /**
+     * Get the stored state of a session without building a session view.
+     *
+     * @param sessionId the session ID
+     * @return the state, or {@code null} if there is no live session with that ID
+     */
+    public SSLSessionState getSessionState(final byte[] sessionId) {
+        if (sessionId == null) throw new NullPointerException();
+        final int hash = hash(sessionId);
+        final long now = System.currentTimeMillis();
+        SSLSessionState state = stripeFor(hash).get(sessionId, hash, now);
+        if (state == null) {
+            state = takeFromSnapshot(sessionId, hash, now);
+        }
+        if (state == null) {
+            statistics.miss();
+        } else {
+            statistics.hit();
+        }
+        return state;
+    }
+
+    private SSLSessionState takeFromSnapshot(final byte[] sessionId, final int hash, final long now) {
+        final SessionSnapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            return null;
+        }
+        if (isExpired(snapshot.getCreatedAt(), now)) {
+            // everything in it is older than that
+            this.snapshot = null;
+            return null;
+        }
+        final SSLSessionState state;
+        try {
+            state = snapshot.take(sessionId, hash);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+        if (state == null || isExpired(state.getCreationTime(), now)) {
+            return null;
+        }
+        putSessionState(state);
+        return state;
+    }
+
+    /**
+     * Store a session state, replacing any state with the same ID.
+     *
+     * @param state the state
+     * @return {@code true} if it was stored, {@code false} if it does not fit in a slot
+     */
+    public boolean putSessionState(final SSLSessionState state) {
+        if (state == null) throw new NullPointerException();
+        final byte[] id = state.getIdNoClone();
+        final Certificate[] chain = state.getPeerCertificatesNoClone();
+        final byte[] chainReference;
+        if (chain == null) {
+            chainReference = null;
+        } else {
+            chainReference = chains.acquire(chain);
+            if (chainReference == null) {
+                return false;
+            }
+        }
+        final int hash = hash(id);
+        if (! stripeFor(hash).put(state, chainReference, hash, System.currentTimeMillis())) {
+            if (chainReference != null) {
+                chains.release(chainReference);
+            }
+            return false;
+        }
+        statistics.put();
+        return true;
+    }
+
+    public boolean removeSession(final byte[] sessionId) {
+        if (sessionId == null) throw new NullPointerException();
+        final int hash = hash(sessionId);
+        final SessionSnapshot snapshot = this.snapshot;
+        if (snapshot != null) {
+            snapshot.remove(sessionId, hash);
+        }
+        return stripeFor(hash).remove(sessionId, hash);
+    }
+
+    /**
+     * Write the live sessions, and any restored sessions not yet looked up, to an encrypted snapshot file.  The file
+     * is written next to its final location and moved into place once complete.
+     *
+     * @param file the snapshot file
+     * @param key the AES key to encrypt with
+     * @return the number of sessions written
+     */
+    public int writeSnapshot(final Path file, final SecretKey key) throws IOException, GeneralSecurityException {
+        if (file == null || key == null) throw new NullPointerException();
+        final long now = System.currentTimeMillis();
+        int count = 0;
+        try (SessionSnapshot.Writer writer = new SessionSnapshot.Writer(file, key)) {
+            for (Stripe stripe : stripes) {
+                for (byte[] encoded : stripe.copyLive(now)) {
+                    final ByteBuffer buf = ByteBuffer.wrap(encoded);
+                    final byte[] id = SessionStateCodec.id(buf, 0);
+                    final byte[] chainReference = SessionStateCodec.chainReference(buf, 0);
+                    final Certificate[] chain = chainReference == null ? null : chains.resolve(chainReference);
+                    if (! writer.add(id, hash(id), encoded, chain, chainReference)) {
+                        break;
+                    }
+                    count++;
+                }
+            }
+            final SessionSnapshot snapshot = this.snapshot;
+            if (snapshot != null && ! isExpired(snapshot.getCreatedAt(), now)) {
+                for (int pos = 0; pos < snapshot.getIndexSize(); pos ++) {
+                    final SSLSessionState state = snapshot.peekAt(pos);
+                    if (state == null || isExpired(state.getCreationTime(), now)) {
+                        continue;
+                    }
+                    final Certificate[] chain = state.getPeerCertificatesNoClone();
+                    final byte[] chainReference = chain == null ? null : ChainRegistry.reference(chain);
+                    final ByteBuffer buf = ByteBuffer.allocate(slotSize);
+                    if (chain != null && chainReference == null || ! SessionStateCodec.encode(state, chainReference, buf)) {
+                        continue;
+                    }
+                    final byte[] id = state.getIdNoClone();
+                    if (! writer.add(id, hash(id), Arrays.copyOf(buf.array(), buf.position()), chain, chainReference)) {
+                        break;
+                    }
+                    count++;
+                }
+            }
+            writer.commit();
+        }
+        return count;
+    }
+
+    /**
+     * Memory-map a snapshot written by {@link #writeSnapshot(Path, SecretKey)}, so that the sessions in it can be
+     * resumed.  Any previously restored snapshot is replaced.
+     *
+     * @param file the snapshot file
+     * @param key the AES key it was written with
+     * @throws GeneralSecurityException if the key does not match the file
+     */
+    public void restoreSnapshot(final Path file, final SecretKey key) throws IOException, GeneralSecurityException {
+        if (file == null || key == null) throw new NullPointerException();
+        snapshot = SessionSnapshot.open(file, key);
+    }
+
+    /**
+     * Write a snapshot periodically.  A failed run leaves the previous snapshot file in place.
+     *
+     * @return the future of the scheduled task, to cancel it
+     */
+    public ScheduledFuture<?> scheduleSnapshots(final ScheduledExecutorService executor, final Path file, final SecretKey key, final long period, final TimeUnit unit) {
+        if (executor == null || file == null || key == null || unit == null) throw new NullPointerException();
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                writeSnapshot(file, key);
+            } catch (IOException | GeneralSecurityException ignored) {
+                // try again next time
+            }
+        }, period, period, unit);
+    }
+
+    public Enumeration<byte[]> getIds() {
+        final long now = System.currentTimeMillis();
+        final List<byte[]> ids = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.collectIds(ids, now);
+        }
+        final SessionSnapshot snapshot = this.snapshot;
+        if (snapshot != null) {
+            snapshot.collectIds(ids);
+        }
+        return Collections.enumeration(ids);
+    }
+
+    public void setSessionTimeout(final int seconds) throws IllegalArgumentException {
+        if (seconds < 0) throw new IllegalArgumentException();
+        sessionTimeout = seconds;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Set the maximum number of sessions.  Values above the slot capacity given at construction, and zero, mean the
+     * full capacity.
+     */
+    public void setSessionCacheSize(final int size) throws IllegalArgumentException {
+        if (size < 0) throw new IllegalArgumentException();
+        synchronized (stripes) {
+            sessionCacheSize = size;
+            final int effective = size == 0 ? capacity : Math.min(size, capacity);
+            final int stripeLimit = (effective + stripes.length - 1) / stripes.length;
+            for (Stripe stripe : stripes) {
+                stripe.setLimit(stripeLimit);
+            }
+        }
+    }
+
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public SSLSessionContextStatistics getStatistics() {
+        return statistics;
+    }
+
+    public SSLSessionTicketManager getSessionTicketManager() {
+        return ticketManager;
+    }
+
+    public void setSessionTicketManager(final SSLSessionTicketManager ticketManager) {
+        this.ticketManager = ticketManager;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    boolean isExpired(final long creationTime, final long now) {
+        final int timeout = sessionTimeout;
+        return timeout != 0 && now - creationTime >= timeout * 1000L;
+    }
+
+    private Stripe stripeFor(final int hash) {
+        return stripes[(hash >>> 24) & stripes.length - 1];
+    }
+
+    static int hash(final byte[] id) {
+        // FNV-1a; Arrays.hashCode collides heavily on IDs which differ in a few bytes only
+        int h = 0x811c9dc5;
+        for (byte b : id) {
+            h = (h ^ b & 0xff) * 0x01000193;
+        }
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        return (h >>> 16) ^ h;
+    }
+
+    /**
+     * Rebuilds a provider session from its stored state.
+     */
+    public interface SessionFactory {
+        SSLSession createSession(SSLSessionState state, SSLSessionContext context);
+    }
+
+    final class Stripe {
+        private final StampedLock lock = new StampedLock();
+        private final ByteBuffer region;
+        private final int slots;
+        private final int[] index;
+        private final int mask;
+        private final int[] hashes;
+        private final boolean[] referenced;
+        private final int[] free;
+        private int freeCount;
+        private int used;
+        private int limit;
+        private int hand;
+
+        Stripe(final int slots) {
+            this.slots = slots;
+            region = ByteBuffer.allocateDirect(slots * slotSize);
+            final int indexSize = Integer.highestOneBit(slots * 2 - 1) << 1;
+            index = new int[indexSize];
+            mask = indexSize - 1;
+            hashes = new int[slots];
+            referenced = new boolean[slots];
+            free = new int[slots];
+            for (int i = 0; i < slots; i ++) {
+                free[i] = slots - 1 - i;
+            }
+            freeCount = slots;
+            limit = slots;
+        }
+
+        SSLSessionState get(final byte[] id, final int hash, final long now) {
+            boolean expired = false;
+            long stamp = lock.readLock();
+            try {
+                final int pos = find(id, hash);
+                if (pos == -1) {
+                    return null;
+                }
+                final int slot = index[pos] - 1;
+                final int offset = slot * slotSize + SLOT_HEADER;
+                if (isExpired(region.getLong(offset + SessionStateCodec.OFFSET_CREATION_TIME), now)) {
+                    expired = true;
+                } else {
+                    referenced[slot] = true;
+                    // benign race between readers
+                    region.putLong(offset + SessionStateCodec.OFFSET_LAST_ACCESSED_TIME, now);
+                    return SessionStateCodec.decode(region, offset, chains::resolve);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+                if (expired && remove(id, hash)) {
+                    statistics.expiration();
+                }
+            }
+            return null;
+        }
+
+        boolean put(final SSLSessionState state, final byte[] chainReference, final int hash, final long now) {
+            final byte[] id = state.getIdNoClone();
+            long stamp = lock.writeLock();
+            try {
+                final int existing = find(id, hash);
+                if (existing != -1) {
+                    removeAt(existing);
+                }
+                while (used >= limit || freeCount == 0) {
+                    if (! evict(now)) {
+                        return false;
+                    }
+                }
+                final int slot = free[--freeCount];
+                final int base = slot * slotSize;
+                final ByteBuffer dst = region.duplicate();
+                dst.limit(base + slotSize).position(base + SLOT_HEADER);
+                if (! SessionStateCodec.encode(state, chainReference, dst)) {
+                    free[freeCount++] = slot;
+                    return false;
+                }
+                region.putShort(base, (short) (dst.position() - base - SLOT_HEADER));
+                hashes[slot] = hash;
+                referenced[slot] = false;
+                int pos = hash & mask;
+                while (index[pos] != 0) {
+                    pos = pos + 1 & mask;
+                }
+                index[pos] = slot + 1;
+                used++;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean remove(final byte[] id, final int hash) {
+            long stamp = lock.writeLock();
+            try {
+                final int pos = find(id, hash);
+                if (pos == -1) {
+                    return false;
+                }
+                removeAt(pos);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void setLimit(final int limit) {
+            long stamp = lock.writeLock();
+            try {
+                this.limit = Math.min(limit, slots);
+                final long now = System.currentTimeMillis();
+                while (used > this.limit) {
+                    evict(now);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return used;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void collectIds(final List<byte[]> ids, final long now) {
+            long stamp = lock.readLock();
+            try {
+                for (int slot = 0; slot < slots; slot ++) {
+                    final int base = slot * slotSize;
+                    if (region.getShort(base) != 0 && ! isExpired(region.getLong(base + SLOT_HEADER + SessionStateCodec.OFFSET_CREATION_TIME), now)) {
+                        ids.add(SessionStateCodec.id(region, base + SLOT_HEADER));
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        List<byte[]> copyLive(final long now) {
+            final List<byte[]> live = new ArrayList<>();
+            long stamp = lock.readLock();
+            try {
+                for (int slot = 0; slot < slots; slot ++) {
+                    final int base = slot * slotSize;
+                    final int length = region.getShort(base) & 0xffff;
+                    if (length != 0 && ! isExpired(region.getLong(base + SLOT_HEADER + SessionStateCodec.OFFSET_CREATION_TIME), now)) {
+                        final byte[] encoded = new byte[length];
+                        final ByteBuffer src = region.duplicate();
+                        src.position(base + SLOT_HEADER);
+                        src.get(encoded);
+                        live.add(encoded);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            return live;
+        }
+
+        private int find(final byte[] id, final int hash) {
+            int pos = hash & mask;
+            int cell;
+            while ((cell = index[pos]) != 0) {
+                final int slot = cell - 1;
+                if (hashes[slot] == hash && SessionStateCodec.idEquals(region, slot * slotSize + SLOT_HEADER, id)) {
+                    return pos;
+                }
+                pos = pos + 1 & mask;
+            }
+            return -1;
+        }
+
+        private int positionOf(final int slot) {
+            int pos = hashes[slot] & mask;
+            while (index[pos] != slot + 1) {
+                pos = pos + 1 & mask;
+            }
+            return pos;
+        }
+
+        private boolean evict(final long now) {
+            if (used == 0) {
+                return false;
+            }
+            // expired or unreferenced slots go first; after two sweeps take whatever is under the hand
+            for (int i = 0; i < slots << 1; i ++) {
+                final int slot = hand;
+                hand = hand + 1 == slots ? 0 : hand + 1;
+                final int base = slot * slotSize;
+                if (region.getShort(base) == 0) {
+                    continue;
+                }
+                final boolean expired = isExpired(region.getLong(base + SLOT_HEADER + SessionStateCodec.OFFSET_CREATION_TIME), now);
+                if (referenced[slot] && ! expired) {
+                    referenced[slot] = false;
+                    continue;
+                }
+                removeAt(positionOf(slot));
+                if (expired) {
+                    statistics.expiration();
+                } else {
+                    statistics.eviction();
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private void removeAt(int pos) {
+            final int slot = index[pos] - 1;
+            final int base = slot * slotSize;
+            final byte[] chainReference = SessionStateCodec.chainReference(region, base + SLOT_HEADER);
+            if (chainReference != null) {
+                chains.release(chainReference);
+            }
+            // wipe the record, master secret included, rather than leave it in memory until the slot is reused
+            final int end = base + SLOT_HEADER + (region.getShort(base) & 0xffff);
+            int i = base;
+            for (; i + 8 <= end; i += 8) {
+                region.putLong(i, 0L);
+            }
+            for (; i < end; i ++) {
+                region.put(i, (byte) 0);
+            }
+            free[freeCount++] = slot;
+            used--;
+            // backward shift deletion keeps probe sequences intact
+            for (;;) {
+                index[pos] = 0;
+                int next = pos;
+                for (;;) {
+                    next = next + 1 & mask;
+                    final int cell = index[next];
+                    if (cell == 0) {
+                        return;
+                    }
+                    final int ideal = hashes[cell - 1] & mask;
+                    if ((next - ideal & mask) >= (next - pos & mask)) {
+                        index[pos] = cell;
+                        pos = next;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    static final class ChainRegistry {
+        private final ConcurrentHashMap<SessionId, Chain> chains = new ConcurrentHashMap<>();
+
+        static byte[] reference(final Certificate[] certificates) {
+            try {
+                final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                for (Certificate certificate : certificates) {
+                    digest.update(certificate.getEncoded());
+                }
+                return digest.digest();
+            } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+                return null;
+            }
+        }
+
+        byte[] acquire(final Certificate[] certificates) {
+            final byte[] reference = reference(certificates);
+            if (reference == null) {
+                return null;
+            }
+            chains.compute(new SessionId(reference), (key, chain) -> {
+                if (chain == null) {
+                    return new Chain(certificates.clone());
+                }
+                chain.references++;
+                return chain;
+            });
+            return reference;
+        }
+
+        void release(final byte[] reference) {
+            chains.computeIfPresent(new SessionId(reference), (key, chain) -> --chain.references == 0 ? null : chain);
+        }
+
+        Certificate[] resolve(final byte[] reference) {
+            final Chain chain = chains.get(new SessionId(reference));
+            return chain == null ? null : chain.certificates;
+        }
+    }
+
+    static final class Chain {
+        private final Certificate[] certificates;
+        // guarded by the map bin
+        int references = 1;
+
+        Chain(final Certificate[] certificates) {
+            this.certificates = certificates;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.Provider;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parameters for key and trust managers which reload a key store file when it changes; see
+ * {@link ReloadingX509KeyManager} and {@link ReloadingX509TrustManager}.
+ * <p>
+ * The file is checked for a new modification time or size every period, on the given executor, which also does the
+ * loading.  Each load goes through a fresh {@link KeyStore.Builder}, handed to the underlying factory as
+ * {@link KeyStoreBuilderParameters}.
+ */
+public final class ReloadableKeyStoreParameters implements ManagerFactoryParameters {
+
+    private final Path file;
+    private final String type;
+    private final Provider provider;
+    private final KeyStore.ProtectionParameter protection;
+    private final String algorithm;
+    private final ScheduledExecutorService executor;
+    private final long period;
+    private final TimeUnit unit;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param file the key store file
+     * @param type the key store type
+     * @param provider the key store provider, or {@code null} for the first one supporting the type
+     * @param protection how to unlock the key store and its entries
+     * @param algorithm the algorithm of the underlying key or trust manager factory, or {@code null} for the default
+     * @param executor the executor to check and load on
+     * @param period the interval between checks
+     * @param unit the unit of the interval
+     */
+    public ReloadableKeyStoreParameters(final Path file, final String type, final Provider provider, final KeyStore.ProtectionParameter protection, final String algorithm, final ScheduledExecutorService executor, final long period, final TimeUnit unit) {
+        if (file == null || type == null || protection == null || executor == null || unit == null) throw new NullPointerException();
+        if (period <= 0) throw new IllegalArgumentException();
+        this.file = file;
+        this.type = type;
+        this.provider = provider;
+        this.protection = protection;
+        this.algorithm = algorithm;
+        this.executor = executor;
+        this.period = period;
+        this.unit = unit;
+    }
+
+    public ReloadableKeyStoreParameters(final Path file, final String type, final KeyStore.ProtectionParameter protection, final ScheduledExecutorService executor, final long period, final TimeUnit unit) {
+        this(file, type, null, protection, null, executor, period, unit);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Provider getProvider() {
+        return provider;
+    }
+
+    public KeyStore.ProtectionParameter getProtection() {
+        return protection;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    public long getPeriod(final TimeUnit unit) {
+        return unit.convert(period, this.unit);
+    }
+
+    /**
+     * Create builder parameters which load the file afresh.
+     */
+    public KeyStoreBuilderParameters newBuilderParameters() {
+        return new KeyStoreBuilderParameters(KeyStore.Builder.newInstance(type, provider, file.toFile(), protection));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+
+/**
+ * A {@link TrustManagerFactorySpi} producing a {@link ReloadingX509TrustManager}.  It must be initialized with
+ * {@link ReloadableKeyStoreParameters}; a bare key store cannot be watched.
+ */
+public class ReloadingTrustManagerFactorySpi extends TrustManagerFactorySpi {
+
+    private volatile ReloadingX509TrustManager trustManager;
+
+    public ReloadingTrustManagerFactorySpi() {
+    }
+
+    protected TrustManager[] engineGetTrustManagers() throws IllegalStateException {
+        final ReloadingX509TrustManager trustManager = this.trustManager;
+        if (trustManager == null) throw new IllegalStateException("Not initialized");
+        return new TrustManager[] { trustManager };
+    }
+
+    protected void engineInit(final KeyStore keyStore) throws KeyStoreException {
+        throw new KeyStoreException("A trust store file is required, use ReloadableKeyStoreParameters");
+    }
+
+    protected void engineInit(final ManagerFactoryParameters spec) throws InvalidAlgorithmParameterException {
+        if (! (spec instanceof ReloadableKeyStoreParameters)) {
+            throw new InvalidAlgorithmParameterException("Unsupported parameters " + spec);
+        }
+        final ReloadingX509TrustManager trustManager;
+        try {
+            trustManager = ReloadingX509TrustManager.create((ReloadableKeyStoreParameters) spec);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new InvalidAlgorithmParameterException(e);
+        }
+        final ReloadingX509TrustManager old = this.trustManager;
+        this.trustManager = trustManager;
+        if (old != null) {
+            old.close();
+        }
+    }
+}
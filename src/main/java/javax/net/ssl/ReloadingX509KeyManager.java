@@ -0,0 +1,216 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An {@link X509ExtendedKeyManager} which follows a key store file as it is replaced, without rebuilding the
+ * {@link SSLContext} it serves.  Aliases are chosen by the key manager built from the latest successfully loaded file.
+ * <p>
+ * Each alias handed out is prefixed with the generation of the file it came from, so that the chain and key looked up
+ * for it come from that same file even if a reload happens in between.  The generation before the latest is kept for
+ * that purpose; an alias from an older one finds nothing.  Aliases without a prefix go to the latest key manager.
+ * <p>
+ * The underlying key manager factory must accept {@link KeyStoreBuilderParameters}; the default algorithm is
+ * {@code PKIX}.
+ */
+public final class ReloadingX509KeyManager extends X509ExtendedKeyManager {
+
+    private static final String SEPARATOR = "@";
+
+    private final KeyStoreWatcher<Generation> watcher;
+
+    private ReloadingX509KeyManager(final KeyStoreWatcher<Generation> watcher) {
+        this.watcher = watcher;
+    }
+
+    /**
+     * Load the key store and start watching it.
+     *
+     * @param parameters the parameters
+     * @return the key manager
+     * @throws GeneralSecurityException if the key manager cannot be built from the key store
+     * @throws IOException if the key store cannot be read
+     */
+    public static ReloadingX509KeyManager create(final ReloadableKeyStoreParameters parameters) throws GeneralSecurityException, IOException {
+        if (parameters == null) throw new NullPointerException();
+        final String algorithm = parameters.getAlgorithm() == null ? "PKIX" : parameters.getAlgorithm();
+        // loads are serialized by the watcher
+        final AtomicReference<Generation> latest = new AtomicReference<>();
+        return new ReloadingX509KeyManager(new KeyStoreWatcher<>(parameters, builderParameters -> {
+            final KeyManagerFactory factory = KeyManagerFactory.getInstance(algorithm);
+            factory.init(builderParameters);
+            for (KeyManager keyManager : factory.getKeyManagers()) {
+                if (keyManager instanceof X509ExtendedKeyManager) {
+                    final Generation previous = latest.get();
+                    final Generation generation = new Generation(previous == null ? 1 : previous.number + 1, (X509ExtendedKeyManager) keyManager, previous);
+                    latest.set(generation);
+                    return generation;
+                }
+            }
+            throw new GeneralSecurityException("Key manager factory " + algorithm + " produced no X509ExtendedKeyManager");
+        }));
+    }
+    /**
+     * Load the key store now, whether or not it changed.
+     */
+    public void reload() throws GeneralSecurityException, IOException {
+        watcher.reload();
+    }
+
+    /**
+     * Stop watching the key store.  The last loaded material stays in use.
+     */
+    public void close() {
+        watcher.close();
+    }
+
+    public long getReloadCount() {
+        return watcher.getReloadCount();
+    }
+
+    /**
+     * Get the reason the last reload attempt failed.
+     *
+     * @return the failure, or {@code null} if the last attempt succeeded
+     */
+    public Exception getLastReloadFailure() {
+        return watcher.getLastFailure();
+    }
+
+    public String[] getClientAliases(final String keyType, final Principal[] issuers) {
+        final Generation generation = watcher.get();
+        return generation.tag(generation.keyManager.getClientAliases(keyType, issuers));
+    }
+
+    public String chooseClientAlias(final String[] keyTypes, final Principal[] issuers, final Socket socket) {
+        final Generation generation = watcher.get();
+        return generation.tag(generation.keyManager.chooseClientAlias(keyTypes, issuers, socket));
+    }
+
+    public String[] getServerAliases(final String keyType, final Principal[] issuers) {
+        final Generation generation = watcher.get();
+        return generation.tag(generation.keyManager.getServerAliases(keyType, issuers));
+    }
+
+    public String chooseServerAlias(final String keyType, final Principal[] issuers, final Socket socket) {
+        final Generation generation = watcher.get();
+        return generation.tag(generation.keyManager.chooseServerAlias(keyType, issuers, socket));
+    }
+
+    public X509Certificate[] getCertificateChain(final String alias) {
+        final X509ExtendedKeyManager keyManager = keyManagerFor(alias);
+        return keyManager == null ? null : keyManager.getCertificateChain(untag(alias));
+    }
+
+    public PrivateKey getPrivateKey(final String alias) {
+        final X509ExtendedKeyManager keyManager = keyManagerFor(alias);
+        return keyManager == null ? null : keyManager.getPrivateKey(untag(alias));
+    }
+
+    public String chooseEngineClientAlias(final String[] keyType, final Principal[] issuers, final SSLEngine engine) {
+        final Generation generation = watcher.get();
+        return generation.tag(generation.keyManager.chooseEngineClientAlias(keyType, issuers, engine));
+    }
+
+    public String chooseEngineServerAlias(final String keyType, final Principal[] issuers, final SSLEngine engine) {
+        final Generation generation = watcher.get();
+        return generation.tag(generation.keyManager.chooseEngineServerAlias(keyType, issuers, engine));
+    }
+
+    /**
+     * Find the key manager an alias was handed out by.
+     *
+     * @return the key manager, or {@code null} if its generation is no longer kept
+     */
+    private X509ExtendedKeyManager keyManagerFor(final String alias) {
+        final Generation current = watcher.get();
+        final int end = tagEnd(alias);
+        if (end == -1) {
+            return current.keyManager;
+        }
+        final long number = Long.parseLong(alias.substring(0, end));
+        if (number == current.number) {
+            return current.keyManager;
+        }
+        final Generation previous = current.previous;
+        return previous != null && number == previous.number ? previous.keyManager : null;
+    }
+
+    private static String untag(final String alias) {
+        final int end = tagEnd(alias);
+        return end == -1 ? alias : alias.substring(end + 1);
+    }
+
+    /**
+     * Get the position of the separator ending the generation prefix of an alias, or -1 if it has none.
+     */
+    private static int tagEnd(final String alias) {
+        if (alias == null) {
+            return -1;
+        }
+        final int end = alias.indexOf(SEPARATOR);
+        // at most 18 digits, so that the number always parses
+        if (end < 1 || end > 18) {
+            return -1;
+        }
+        for (int i = 0; i < end; i ++) {
+            final char c = alias.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        return end;
+    }
+
+    static final class Generation {
+        private final long number;
+        private final X509ExtendedKeyManager keyManager;
+        private final Generation previous;
+
+        Generation(final long number, final X509ExtendedKeyManager keyManager, final Generation previous) {
+            this.number = number;
+            this.keyManager = keyManager;
+            // only one generation back is kept
+            this.previous = previous == null ? null : new Generation(previous.number, previous.keyManager, null);
+        }
+
+        String tag(final String alias) {
+            return alias == null ? null : number + SEPARATOR + alias;
+        }
+
+        String[] tag(final String[] aliases) {
+            if (aliases == null) {
+                return null;
+            }
+            final String[] tagged = new String[aliases.length];
+            for (int i = 0; i < aliases.length; i ++) {
+                tagged[i] = tag(aliases[i]);
+            }
+            return tagged;
+        }
+    }
+}
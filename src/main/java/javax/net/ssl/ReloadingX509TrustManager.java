@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * An {@link X509ExtendedTrustManager} which follows a trust store file as it is replaced, without rebuilding the
+ * {@link SSLContext} it serves.  Each check goes to the trust manager built from the latest successfully loaded file.
+ */
+public final class ReloadingX509TrustManager extends X509ExtendedTrustManager {
+
+    private final KeyStoreWatcher<X509ExtendedTrustManager> watcher;
+
+    private ReloadingX509TrustManager(final KeyStoreWatcher<X509ExtendedTrustManager> watcher) {
+        this.watcher = watcher;
+    }
+
+    /**
+     * Load the trust store and start watching it.
+     *
+     * @param parameters the parameters
+     * @return the trust manager
+     * @throws GeneralSecurityException if the trust manager cannot be built from the trust store
+     * @throws IOException if the trust store cannot be read
+     */
+    public static ReloadingX509TrustManager create(final ReloadableKeyStoreParameters parameters) throws GeneralSecurityException, IOException {
+        if (parameters == null) throw new NullPointerException();
+        final String algorithm = parameters.getAlgorithm() == null ? TrustManagerFactory.getDefaultAlgorithm() : parameters.getAlgorithm();
+        return new ReloadingX509TrustManager(new KeyStoreWatcher<>(parameters, builderParameters -> {
+            final TrustManagerFactory factory = TrustManagerFactory.getInstance(algorithm);
+            factory.init(builderParameters.getParameters().get(0).getKeyStore());
+            for (TrustManager trustManager : factory.getTrustManagers()) {
+                if (trustManager instanceof X509ExtendedTrustManager) {
+                    return (X509ExtendedTrustManager) trustManager;
+                }
+            }
+            throw new GeneralSecurityException("Trust manager factory " + algorithm + " produced no X509ExtendedTrustManager");
+        }));
+    }
+
+    /**
+     * Load the trust store now, whether or not it changed.
+     */
+    public void reload() throws GeneralSecurityException, IOException {
+        watcher.reload();
+    }
+
+    /**
+     * Stop watching the trust store.  The last loaded material stays in use.
+     */
+    public void close() {
+        watcher.close();
+    }
+
+    public long getReloadCount() {
+        return watcher.getReloadCount();
+    }
+
+    /**
+     * Get the reason the last reload attempt failed.
+     *
+     * @return the failure, or {@code null} if the last attempt succeeded
+     */
+    public Exception getLastReloadFailure() {
+        return watcher.getLastFailure();
+    }
+
+    public void checkClientTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+        watcher.get().checkClientTrusted(chain, authType);
+    }
+
+    public void checkServerTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+        watcher.get().checkServerTrusted(chain, authType);
+    }
+
+    public void checkClientTrusted(final X509Certificate[] chain, final String authType, final Socket socket) throws CertificateException {
+        watcher.get().checkClientTrusted(chain, authType, socket);
+    }
+
+    public void checkServerTrusted(final X509Certificate[] chain, final String authType, final Socket socket) throws CertificateException {
+        watcher.get().checkServerTrusted(chain, authType, socket);
+    }
+
+    public void checkClientTrusted(final X509Certificate[] chain, final String authType, final SSLEngine engine) throws CertificateException {
+        watcher.get().checkClientTrusted(chain, authType, engine);
+    }
+
+    public void checkServerTrusted(final X509Certificate[] chain, final String authType, final SSLEngine engine) throws CertificateException {
+        watcher.get().checkServerTrusted(chain, authType, engine);
+    }
+
+    public X509Certificate[] getAcceptedIssuers() {
+        return watcher.get().getAcceptedIssuers();
+    }
+}
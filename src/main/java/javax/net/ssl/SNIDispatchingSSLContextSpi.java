@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.net.ssl;
+
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+
+/**
+ * An {@link SSLContextSpi} which serves each host name from its own {@link SSLContext}, so that one listener can use
+ * different key material, protocols and cipher suites per host.
+ * <p>
+ * The engines it creates read the server name indication of the ClientHello before doing anything else, and hand the
+ * connection to an engine of the context the {@link SSLContextRegistry} has for that name.  That engine uses the
+ * protocols and cipher suites of its own context; client authentication, endpoint identification, algorithm
+ * constraints, SNI matchers and cipher suite order are carried over from the dispatching engine.  Engines in client
+ * mode, the socket factories and the session contexts are those of the default context.
+ * <p>
+ * The whole ClientHello must fit in the buffer given to {@code unwrap}, which holds until it has arrived.
+ */
+public final class SNIDispatchingSSLContextSpi extends SSLContextSpi {
+
+    private final SSLContextRegistry registry;
+
+    public SNIDispatchingSSLContextSpi(final SSLContextRegistry registry) {
+        if (registry == null) throw new NullPointerException();
+        this.registry = registry;
+    }
+
+    /**
+     * Create a dispatching context, with the provider and protocol of the default context.
+     *
+     * @param registry the registry of contexts
+     * @return the context
+     */
+    public static SSLContext createSSLContext(final SSLContextRegistry registry) {
+        final SSLContext defaultContext = registry.getDefaultContext();
+        return new SSLContext(new SNIDispatchingSSLContextSpi(registry), defaultContext.getProvider(), defaultContext.getProtocol());
+    }
+
+    public SSLContextRegistry getRegistry() {
+        return registry;
+    }
+
+    protected void engineInit(final KeyManager[] km, final TrustManager[] tm, final SecureRandom random) throws KeyManagementException {
+        throw new KeyManagementException("The contexts of the registry are initialized by its loader");
+    }
+
+    protected SSLSocketFactory engineGetSocketFactory() {
+        return registry.getDefaultContext().getSocketFactory();
+    }
+
+    protected SSLServerSocketFactory engineGetServerSocketFactory() {
+        return registry.getDefaultContext().getServerSocketFactory();
+    }
+
+    protected SSLEngine engineCreateSSLEngine() {
+        return new SNIDispatchingSSLEngine(registry, registry.getDefaultContext().createSSLEngine());
+    }
+
+    protected SSLEngine engineCreateSSLEngine(final String host, final int port) {
+        return new SNIDispatchingSSLEngine(registry, registry.getDefaultContext().createSSLEngine(host, port));
+    }
+
+    protected SSLSessionContext engineGetServerSessionContext() {
+        return registry.getDefaultContext().getServerSessionContext();
+    }
+
+    protected SSLSessionContext engineGetClientSessionContext() {
+        return registry.getDefaultContext().getClientSessionContext();
+    }
+
+    protected SSLParameters engineGetDefaultSSLParameters() {
+        return registry.getDefaultContext().getDefaultSSLParameters();
+    }
+
+    protected SSLParameters engineGetSupportedSSLParameters() {
+        return registry.getDefaultContext().getSupportedSSLParameters();
+    }
+}
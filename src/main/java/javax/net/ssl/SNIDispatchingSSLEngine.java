@@ -0,0 +1,343 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.net.ssl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The engine of {@link SNIDispatchingSSLContextSpi}.  Until the ClientHello has been read, it is configured through
+ * an engine of the default context; after that, everything goes to the engine the connection was handed to.
+ * <p>
+ * A context which the registry has yet to load is loaded by a delegated task: {@code unwrap} reports
+ * {@link SSLEngineResult.HandshakeStatus#NEED_TASK NEED_TASK} without consuming the ClientHello, and reads it again
+ * once the task has run.
+ */
+final class SNIDispatchingSSLEngine extends SSLEngine {
+
+    private final SSLContextRegistry registry;
+    private final SSLEngine template;
+    private volatile SSLEngine delegate;
+    private boolean handshakeBegun;
+    // the rest is set once the ClientHello asks for a context which is not loaded
+    private String hostName;
+    private Runnable pendingTask;
+    private boolean loading;
+    private SSLContext context;
+    private RuntimeException loadFailure;
+
+    SNIDispatchingSSLEngine(final SSLContextRegistry registry, final SSLEngine template) {
+        super(template.getPeerHost(), template.getPeerPort());
+        this.registry = registry;
+        this.template = template;
+    }
+
+    private SSLEngine current() {
+        final SSLEngine delegate = this.delegate;
+        return delegate == null ? template : delegate;
+    }
+
+    /**
+     * Get the engine to wrap and unwrap with, or {@code null} if a server engine is still waiting for the ClientHello.
+     */
+    private SSLEngine active() {
+        final SSLEngine delegate = this.delegate;
+        if (delegate != null) {
+            return delegate;
+        }
+        synchronized (this) {
+            if (this.delegate == null && template.getUseClientMode()) {
+                this.delegate = template;
+            }
+            return this.delegate;
+        }
+    }
+
+    /**
+     * Hand the connection to an engine once the ClientHello is in.
+     *
+     * @return {@code null} if {@link #delegate} is set, or else the result to report while waiting
+     */
+    private synchronized SSLEngineResult dispatch(final ByteBuffer src) throws SSLException {
+        if (delegate != null) {
+            return null;
+        }
+        if (loading) {
+            return new SSLEngineResult(SSLEngineResult.Status.OK, SSLEngineResult.HandshakeStatus.NEED_TASK, 0, 0, 0);
+        }
+        if (hostName != null) {
+            if (loadFailure != null) {
+                final SSLHandshakeException exception = new SSLHandshakeException("No context for " + hostName);
+                exception.initCause(loadFailure);
+                throw exception;
+            }
+            delegate = createEngine(context);
+            return null;
+        }
+        final SSLClientHello hello;
+        try {
+            hello = SSLClientHello.parse(src);
+        } catch (SSLProtocolException ignored) {
+            // let a real engine reject it, with the proper alert
+            delegate = template;
+            return null;
+        }
+        if (hello == null) {
+            return new SSLEngineResult(SSLEngineResult.Status.BUFFER_UNDERFLOW, SSLEngineResult.HandshakeStatus.NEED_UNWRAP, 0, 0, 0);
+        }
+        String requested = null;
+        for (SNIServerName name : hello.getServerNames()) {
+            if (name instanceof SNIHostName) {
+                requested = ((SNIHostName) name).getAsciiName();
+                break;
+            }
+        }
+        final SSLContext loaded = registry.getLoadedContext(requested);
+        if (loaded != null) {
+            delegate = createEngine(loaded);
+            return null;
+        }
+        // the loader may be slow, so it runs as a task rather than under our lock on the I/O thread
+        final String hostName = requested;
+        this.hostName = hostName;
+        loading = true;
+        pendingTask = () -> {
+            SSLContext context = null;
+            RuntimeException failure = null;
+            try {
+                context = registry.getContext(hostName);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            synchronized (SNIDispatchingSSLEngine.this) {
+                this.context = context;
+                loadFailure = failure;
+                loading = false;
+            }
+        };
+        return new SSLEngineResult(SSLEngineResult.Status.OK, SSLEngineResult.HandshakeStatus.NEED_TASK, 0, 0, 0);
+    }
+
+    private SSLEngine createEngine(final SSLContext context) throws SSLException {
+        if (context == registry.getDefaultContext()) {
+            return template;
+        }
+        final SSLEngine engine = context.createSSLEngine(getPeerHost(), getPeerPort());
+        engine.setUseClientMode(false);
+        final SSLParameters configured = template.getSSLParameters();
+        final SSLParameters parameters = engine.getSSLParameters();
+        if (configured.getNeedClientAuth()) {
+            parameters.setNeedClientAuth(true);
+        } else {
+            parameters.setWantClientAuth(configured.getWantClientAuth());
+        }
+        parameters.setEndpointIdentificationAlgorithm(configured.getEndpointIdentificationAlgorithm());
+        parameters.setAlgorithmConstraints(configured.getAlgorithmConstraints());
+        if (configured.getSNIMatchers() != null) {
+            parameters.setSNIMatchers(configured.getSNIMatchers());
+        }
+        parameters.setUseCipherSuitesOrder(configured.getUseCipherSuitesOrder());
+        engine.setSSLParameters(parameters);
+        engine.setEnableSessionCreation(template.getEnableSessionCreation());
+        if (handshakeBegun) {
+            engine.beginHandshake();
+        }
+        return engine;
+    }
+
+    public SSLEngineResult wrap(final ByteBuffer[] srcs, final int offs, final int length, final ByteBuffer dst) throws SSLException {
+        final SSLEngine engine = active();
+        if (engine == null) {
+            final boolean loading;
+            synchronized (this) {
+                handshakeBegun = true;
+                loading = this.loading;
+            }
+            // nothing to send before the ClientHello is in and its context loaded
+            return new SSLEngineResult(SSLEngineResult.Status.OK, loading ? SSLEngineResult.HandshakeStatus.NEED_TASK : SSLEngineResult.HandshakeStatus.NEED_UNWRAP, 0, 0, 0);
+        }
+        return engine.wrap(srcs, offs, length, dst);
+    }
+
+    public SSLEngineResult unwrap(final ByteBuffer src, final ByteBuffer[] byteBuffers, final int offs, final int length) throws SSLException {
+        SSLEngine engine = active();
+        if (engine == null) {
+            final SSLEngineResult waiting = dispatch(src);
+            if (waiting != null) {
+                return waiting;
+            }
+            engine = delegate;
+        }
+        return engine.unwrap(src, byteBuffers, offs, length);
+    }
+
+    public void wrap(final ByteBuffer src, final ByteBuffer dst, final SSLEngineResultHolder result) throws SSLException {
+        final SSLEngine engine = delegate;
+        if (engine == null) {
+            super.wrap(src, dst, result);
+        } else {
+            engine.wrap(src, dst, result);
+        }
+    }
+
+    public void unwrap(final ByteBuffer src, final ByteBuffer dst, final SSLEngineResultHolder result) throws SSLException {
+        final SSLEngine engine = delegate;
+        if (engine == null || getUnwrapAllRecords()) {
+            super.unwrap(src, dst, result);
+        } else {
+            engine.unwrap(src, dst, result);
+        }
+    }
+
+    public Runnable getDelegatedTask() {
+        final SSLEngine delegate = this.delegate;
+        if (delegate != null) {
+            return delegate.getDelegatedTask();
+        }
+        synchronized (this) {
+            final Runnable task = pendingTask;
+            pendingTask = null;
+            return task;
+        }
+    }
+
+    public void closeInbound() throws SSLException {
+        closing().closeInbound();
+    }
+
+    public boolean isInboundDone() {
+        return current().isInboundDone();
+    }
+
+    public void closeOutbound() {
+        closing().closeOutbound();
+    }
+
+    public boolean isOutboundDone() {
+        return current().isOutboundDone();
+    }
+
+    private synchronized SSLEngine closing() {
+        // no ClientHello is coming any more
+        if (delegate == null) {
+            delegate = template;
+        }
+        return delegate;
+    }
+
+    public String[] getSupportedCipherSuites() {
+        return current().getSupportedCipherSuites();
+    }
+
+    public String[] getEnabledCipherSuites() {
+        return current().getEnabledCipherSuites();
+    }
+
+    public void setEnabledCipherSuites(final String[] suites) throws IllegalArgumentException {
+        current().setEnabledCipherSuites(suites);
+    }
+
+    public String[] getSupportedProtocols() {
+        return current().getSupportedProtocols();
+    }
+
+    public String[] getEnabledProtocols() {
+        return current().getEnabledProtocols();
+    }
+
+    public void setEnabledProtocols(final String[] protocols) throws IllegalArgumentException {
+        current().setEnabledProtocols(protocols);
+    }
+
+    public SSLSession getSession() {
+        return current().getSession();
+    }
+
+    public SSLSession getHandshakeSession() {
+        final SSLEngine delegate = this.delegate;
+        return delegate == null ? null : delegate.getHandshakeSession();
+    }
+
+    public void beginHandshake() throws SSLException, IllegalStateException {
+        final SSLEngine engine = active();
+        if (engine == null) {
+            synchronized (this) {
+                handshakeBegun = true;
+            }
+        } else {
+            engine.beginHandshake();
+        }
+    }
+
+    public SSLEngineResult.HandshakeStatus getHandshakeStatus() {
+        final SSLEngine delegate = this.delegate;
+        if (delegate != null) {
+            return delegate.getHandshakeStatus();
+        }
+        synchronized (this) {
+            if (loading) {
+                return SSLEngineResult.HandshakeStatus.NEED_TASK;
+            }
+            return handshakeBegun || hostName != null ? SSLEngineResult.HandshakeStatus.NEED_UNWRAP : SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+        }
+    }
+
+    public void setUseClientMode(final boolean mode) throws IllegalArgumentException {
+        current().setUseClientMode(mode);
+    }
+
+    public boolean getUseClientMode() {
+        return current().getUseClientMode();
+    }
+
+    public void setNeedClientAuth(final boolean need) {
+        current().setNeedClientAuth(need);
+    }
+
+    public boolean getNeedClientAuth() {
+        return current().getNeedClientAuth();
+    }
+
+    public void setWantClientAuth(final boolean want) {
+        current().setWantClientAuth(want);
+    }
+
+    public boolean getWantClientAuth() {
+        return current().getWantClientAuth();
+    }
+
+    public void setEnableSessionCreation(final boolean flag) {
+        current().setEnableSessionCreation(flag);
+    }
+
+    public boolean getEnableSessionCreation() {
+        return current().getEnableSessionCreation();
+    }
+
+    public SSLParameters getSSLParameters() {
+        final SSLParameters parameters = current().getSSLParameters();
+        parameters.setUnwrapAllRecords(getUnwrapAllRecords());
+        return parameters;
+    }
+
+    public void setSSLParameters(final SSLParameters parameters) {
+        current().setSSLParameters(parameters);
+        if (parameters.isUnwrapAllRecordsSet()) {
+            setUnwrapAllRecords(parameters.getUnwrapAllRecords());
+        }
+    }
+}
@@ -22,31 +22,73 @@ import static javax.net.ssl.StandardConstants.SNI_HOST_NAME;
 
 import java.net.IDN;
 import java.nio.charset.StandardCharsets;
-import java.util.Locale;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
+/**
+ * A server name of type {@code host_name}.
+ * <p>
+ * Names made only of ASCII letters, digits, hyphens and dots, which are most names, are checked directly instead of
+ * going through {@link IDN}.  Frequently used names can be shared through {@link #intern(String)}.
+ */
 public final class SNIHostName extends SNIServerName {
 
+    // bound on interned names; an arbitrary sixteenth of them is dropped when it is reached
+    private static final int MAX_INTERNED = 4096;
+
+    private static final ConcurrentHashMap<String, SNIHostName> interned = new ConcurrentHashMap<>();
+
     private final String hostName;
+    private int hashCode;
 
     public SNIHostName(final byte[] encoded) {
-        this(IDN.toASCII(new String(encoded, StandardCharsets.UTF_8)), encoded);
+        this(isLdhName(encoded) ? new String(encoded, StandardCharsets.US_ASCII) : IDN.toASCII(new String(encoded, StandardCharsets.UTF_8)), encoded, true);
     }
 
     public SNIHostName(final String hostName) {
-        this(IDN.toASCII(hostName, IDN.USE_STD3_ASCII_RULES), 0);
+        this(isLdhName(hostName) ? hostName : IDN.toASCII(hostName, IDN.USE_STD3_ASCII_RULES), 0);
     }
 
     private SNIHostName(final String hostName, int unused) {
-        this(hostName, hostName.getBytes(StandardCharsets.US_ASCII));
+        this(hostName, hostName.getBytes(StandardCharsets.US_ASCII), false);
     }
 
-    private SNIHostName(final String hostName, final byte[] encoded) {
-        super(SNI_HOST_NAME, encoded);
+    private SNIHostName(final String hostName, final byte[] encoded, final boolean copy) {
+        super(SNI_HOST_NAME, encoded, copy);
         if (hostName.isEmpty() || hostName.endsWith(".")) throw new IllegalArgumentException();
         this.hostName = hostName;
     }
 
+    /**
+     * Get a shared instance for a host name.  Names are looked up exactly as given, so differently cased forms of a
+     * name are distinct entries, though equal instances.  The table is process-wide and bounded, so only names from a
+     * trusted source, such as configuration, should be interned; names sent by peers would push the useful ones out.
+     *
+     * @param hostName the host name
+     * @return the instance
+     * @throws IllegalArgumentException if the host name is not valid
+     */
+    public static SNIHostName intern(final String hostName) throws IllegalArgumentException {
+        if (hostName == null) throw new NullPointerException();
+        SNIHostName name = interned.get(hostName);
+        if (name == null) {
+            name = new SNIHostName(hostName);
+            if (interned.size() >= MAX_INTERNED) {
+                int excess = Math.max(1, MAX_INTERNED >> 4);
+                for (Iterator<SNIHostName> iterator = interned.values().iterator(); excess > 0 && iterator.hasNext(); excess--) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            final SNIHostName appearing = interned.putIfAbsent(hostName, name);
+            if (appearing != null) {
+                name = appearing;
+            }
+        }
+        return name;
+    }
+
     public String getAsciiName() {
         return hostName;
     }
@@ -56,17 +98,72 @@ public final class SNIHostName extends SNIServerName {
     }
 
     private boolean equals(final SNIHostName obj) {
-        return obj.hostName.equalsIgnoreCase(hostName);
+        return obj == this || obj.hashCode() == hashCode() && obj.hostName.equalsIgnoreCase(hostName);
     }
 
     public int hashCode() {
-        return 527 + hostName.toUpperCase(Locale.ENGLISH).hashCode();
+        int hashCode = this.hashCode;
+        if (hashCode == 0) {
+            // same as hashing the upper case form; the name is ASCII
+            final String hostName = this.hostName;
+            int hc = 0;
+            for (int i = 0; i < hostName.length(); i ++) {
+                final char c = hostName.charAt(i);
+                hc = 31 * hc + (c >= 'a' && c <= 'z' ? c - 32 : c);
+            }
+            this.hashCode = hashCode = 527 + hc;
+        }
+        return hashCode;
     }
 
     public String toString() {
         return "type=host_name (0), value=" + hostName;
     }
 
+    /**
+     * Determine whether a name can be used without conversion: non-empty labels of at most 63 letters, digits and
+     * inner hyphens, which is what {@link IDN#toASCII(String, int)} would return unchanged.
+     */
+    static boolean isLdhName(final String name) {
+        final int length = name.length();
+        int labelStart = 0;
+        for (int i = 0; i <= length; i ++) {
+            final char c = i == length ? '.' : name.charAt(i);
+            if (c == '.') {
+                final int labelLength = i - labelStart;
+                if (labelLength == 0 || labelLength > 63 || name.charAt(labelStart) == '-' || name.charAt(i - 1) == '-') {
+                    return false;
+                }
+                labelStart = i + 1;
+            } else if (! isLdh(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isLdhName(final byte[] name) {
+        final int length = name.length;
+        int labelStart = 0;
+        for (int i = 0; i <= length; i ++) {
+            final int c = i == length ? '.' : name[i];
+            if (c == '.') {
+                final int labelLength = i - labelStart;
+                if (labelLength == 0 || labelLength > 63 || name[labelStart] == '-' || name[i - 1] == '-') {
+                    return false;
+                }
+                labelStart = i + 1;
+            } else if (! isLdh(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLdh(final int c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-';
+    }
+
     public static SNIMatcher createSNIMatcher(final String regex) {
         final Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
         return new SNIMatcher(SNI_HOST_NAME) {
@@ -77,7 +174,7 @@ public final class SNIHostName extends SNIServerName {
                     asciiName = ((SNIHostName) serverName).getAsciiName();
                 } else {
                     try {
-                        asciiName = IDN.toASCII(new String(serverName.getEncoded(), StandardCharsets.UTF_8));
+                        asciiName = IDN.toASCII(new String(serverName.getEncodedNoClone(), StandardCharsets.UTF_8));
                     } catch (RuntimeException ignored) {
                         return false;
                     }
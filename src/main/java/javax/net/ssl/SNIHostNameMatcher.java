@@ -0,0 +1,334 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.net.ssl;
+
+import java.net.IDN;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An {@link SNIMatcher} for host names which checks many patterns at once.  The patterns are compiled into a
+ * case-insensitive trie of labels, so that a name is matched in one pass over its ASCII form from right to left,
+ * however many patterns there are.
+ * <p>
+ * A pattern is one of:
+ * <ul>
+ *     <li>a host name such as {@code www.example.com}, which matches that name only;</li>
+ *     <li>a wildcard such as {@code *.example.com}, which matches a name with exactly one more label;</li>
+ *     <li>a suffix such as {@code .example.com}, which matches a name with one or more labels more.</li>
+ * </ul>
+ * Internationalized patterns are converted to their ASCII form.  When several patterns match, an exact one wins
+ * over a wildcard, which wins over the longest matching suffix; among equal patterns, the first one wins.
+ */
+public final class SNIHostNameMatcher extends SNIMatcher {
+
+    private static final int EXACT = 0;
+    private static final int WILDCARD = 1;
+    private static final int SUFFIX = 2;
+
+    private final List<String> patterns;
+    private final Node root = new Node();
+
+    private SNIHostNameMatcher(final List<String> patterns) {
+        super(StandardConstants.SNI_HOST_NAME);
+        this.patterns = patterns;
+    }
+
+    /**
+     * Compile host name patterns.
+     *
+     * @param patterns the patterns
+     * @return the matcher
+     * @throws IllegalArgumentException if a pattern is not valid
+     */
+    public static SNIHostNameMatcher compile(final Collection<String> patterns) throws IllegalArgumentException {
+        if (patterns == null) throw new NullPointerException();
+        final SNIHostNameMatcher matcher = new SNIHostNameMatcher(Collections.unmodifiableList(new ArrayList<>(patterns)));
+        int index = 0;
+        for (String pattern : matcher.patterns) {
+            if (pattern == null) throw new NullPointerException();
+            matcher.add(pattern, index ++);
+        }
+        return matcher;
+    }
+
+    public static SNIHostNameMatcher compile(final String... patterns) throws IllegalArgumentException {
+        if (patterns == null) throw new NullPointerException();
+        return compile(Arrays.asList(patterns));
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public boolean matches(final SNIServerName serverName) {
+        return indexOf(serverName) != -1;
+    }
+
+    /**
+     * Get the pattern which a server name matches.
+     *
+     * @param serverName the server name
+     * @return the pattern, as given, or {@code null} if none matches
+     */
+    public String match(final SNIServerName serverName) {
+        final int index = indexOf(serverName);
+        return index == -1 ? null : patterns.get(index);
+    }
+
+    /**
+     * Get the pattern which an ASCII host name matches.
+     *
+     * @param asciiName the host name
+     * @return the pattern, as given, or {@code null} if none matches
+     */
+    public String match(final String asciiName) {
+        if (asciiName == null) throw new NullPointerException();
+        final int index = indexOf(asciiName);
+        return index == -1 ? null : patterns.get(index);
+    }
+
+    /**
+     * Get the index of the pattern which a server name matches.
+     *
+     * @param serverName the server name
+     * @return the index, or -1 if none matches
+     */
+    public int indexOf(final SNIServerName serverName) {
+        if (serverName == null) throw new NullPointerException();
+        if (serverName instanceof SNIHostName) {
+            return indexOf(((SNIHostName) serverName).getAsciiName());
+        }
+        if (serverName.getType() != StandardConstants.SNI_HOST_NAME) {
+            return -1;
+        }
+        final String asciiName;
+        try {
+            asciiName = new SNIHostName(serverName.getEncodedNoClone()).getAsciiName();
+        } catch (RuntimeException ignored) {
+            return -1;
+        }
+        return indexOf(asciiName);
+    }
+
+    private int indexOf(final String name) {
+        Node node = root;
+        Node parent = null;
+        int suffix = -1;
+        int end = name.length();
+        boolean first = false;
+        while (! first) {
+            int hash = 0;
+            int i = end - 1;
+            char c;
+            while (i >= 0 && (c = name.charAt(i)) != '.') {
+                hash = 31 * hash + toLower(c);
+                i --;
+            }
+            final int start = i + 1;
+            if (start == end) {
+                // empty label
+                return -1;
+            }
+            if (node.suffix != -1) {
+                suffix = node.suffix;
+            }
+            first = i < 0;
+            if (first) {
+                parent = node;
+            }
+            node = node.getChild(name, start, end, hash);
+            if (node == null) {
+                break;
+            }
+            end = i;
+        }
+        if (node != null && node.exact != -1) {
+            return node.exact;
+        }
+        if (parent != null && parent.wildcard != -1) {
+            return parent.wildcard;
+        }
+        return suffix;
+    }
+
+    private void add(final String pattern, final int index) {
+        final int kind;
+        String name;
+        if (pattern.startsWith("*.")) {
+            kind = WILDCARD;
+            name = pattern.substring(2);
+        } else if (pattern.startsWith(".")) {
+            kind = SUFFIX;
+            name = pattern.substring(1);
+        } else {
+            kind = EXACT;
+            name = pattern;
+        }
+        if (name.endsWith(".")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        if (name.isEmpty() || name.indexOf('*') != -1) {
+            throw new IllegalArgumentException("Invalid host name pattern " + pattern);
+        }
+        try {
+            name = IDN.toASCII(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid host name pattern " + pattern, e);
+        }
+        Node node = root;
+        int end = name.length();
+        for (;;) {
+            final int dot = name.lastIndexOf('.', end - 1);
+            final String label = name.substring(dot + 1, end);
+            if (label.isEmpty()) {
+                throw new IllegalArgumentException("Invalid host name pattern " + pattern);
+            }
+            node = node.getOrCreateChild(label);
+            if (dot == -1) {
+                break;
+            }
+            end = dot;
+        }
+        switch (kind) {
+            case EXACT: {
+                if (node.exact == -1) node.exact = index;
+                break;
+            }
+            case WILDCARD: {
+                if (node.wildcard == -1) node.wildcard = index;
+                break;
+            }
+            default: {
+                if (node.suffix == -1) node.suffix = index;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Hash a label as the matcher reads it, from right to left and lower case.
+     */
+    static int hash(final String label) {
+        int hash = 0;
+        for (int i = label.length() - 1; i >= 0; i --) {
+            hash = 31 * hash + toLower(label.charAt(i));
+        }
+        return hash;
+    }
+
+    static char toLower(final char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+    }
+
+    /**
+     * A trie node, whose children are kept in an open-addressed table of labels.
+     */
+    static final class Node {
+        private String[] labels;
+        private Node[] children;
+        private int[] hashes;
+        private int size;
+        int exact = -1;
+        int wildcard = -1;
+        int suffix = -1;
+
+        Node getChild(final String name, final int start, final int end, final int hash) {
+            final String[] labels = this.labels;
+            if (labels == null) {
+                return null;
+            }
+            final int length = end - start;
+            final int mask = labels.length - 1;
+            for (int i = mix(hash) & mask;; i = (i + 1) & mask) {
+                final String label = labels[i];
+                if (label == null) {
+                    return null;
+                }
+                if (hashes[i] == hash && label.length() == length && label.regionMatches(true, 0, name, start, length)) {
+                    return children[i];
+                }
+            }
+        }
+
+        Node getOrCreateChild(final String label) {
+            final int hash = hash(label);
+            final String lower = lower(label);
+            final Node existing = getChild(lower, 0, lower.length(), hash);
+            if (existing != null) {
+                return existing;
+            }
+            if (labels == null || (size + 1) * 2 > labels.length) {
+                resize(labels == null ? 2 : labels.length << 1);
+            }
+            final Node child = new Node();
+            insert(lower, hash, child);
+            size ++;
+            return child;
+        }
+
+        private void insert(final String label, final int hash, final Node child) {
+            final int mask = labels.length - 1;
+            int i = mix(hash) & mask;
+            while (labels[i] != null) {
+                i = (i + 1) & mask;
+            }
+            labels[i] = label;
+            hashes[i] = hash;
+            children[i] = child;
+        }
+
+        private void resize(final int capacity) {
+            final String[] oldLabels = labels;
+            final int[] oldHashes = hashes;
+            final Node[] oldChildren = children;
+            labels = new String[capacity];
+            hashes = new int[capacity];
+            children = new Node[capacity];
+            if (oldLabels != null) {
+                for (int i = 0; i < oldLabels.length; i ++) {
+                    if (oldLabels[i] != null) {
+                        insert(oldLabels[i], oldHashes[i], oldChildren[i]);
+                    }
+                }
+            }
+        }
+
+        private static String lower(final String label) {
+            for (int i = 0; i < label.length(); i ++) {
+                final char c = label.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    final char[] chars = label.toCharArray();
+                    for (int j = i; j < chars.length; j ++) {
+                        chars[j] = toLower(chars[j]);
+                    }
+                    return new String(chars);
+                }
+            }
+            return label;
+        }
+
+        private static int mix(final int hash) {
+            final int h = hash * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
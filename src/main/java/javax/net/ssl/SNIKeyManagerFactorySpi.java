@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.net.ssl;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A {@link KeyManagerFactorySpi} producing a {@link SNIX509KeyManager}.  When initialized with
+ * {@link KeyStoreBuilderParameters}, the key stores are loaded in parallel on the common fork-join pool.
+ */
+public class SNIKeyManagerFactorySpi extends KeyManagerFactorySpi {
+
+    private volatile SNIX509KeyManager keyManager;
+
+    public SNIKeyManagerFactorySpi() {
+    }
+
+    protected KeyManager[] engineGetKeyManagers() throws IllegalStateException {
+        final SNIX509KeyManager keyManager = this.keyManager;
+        if (keyManager == null) throw new IllegalStateException("Not initialized");
+        return new KeyManager[] { keyManager };
+    }
+
+    protected void engineInit(final ManagerFactoryParameters spec) throws InvalidAlgorithmParameterException {
+        if (! (spec instanceof KeyStoreBuilderParameters)) {
+            throw new InvalidAlgorithmParameterException("Unsupported parameters " + spec);
+        }
+        try {
+            keyManager = new SNIX509KeyManager((KeyStoreBuilderParameters) spec, ForkJoinPool.commonPool(), null);
+        } catch (GeneralSecurityException e) {
+            throw new InvalidAlgorithmParameterException(e);
+        }
+    }
+
+    protected void engineInit(final KeyStore ks, final char[] password) throws KeyStoreException {
+        if (ks == null) throw new KeyStoreException("A key store is required");
+        try {
+            keyManager = new SNIX509KeyManager(ks, password);
+        } catch (KeyStoreException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new KeyStoreException(e);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 package javax.net.ssl;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public abstract class SNIServerName {
@@ -25,10 +26,14 @@ public abstract class SNIServerName {
     private final byte[] encoded;
 
     protected SNIServerName(final int type, final byte[] encoded) {
+        this(type, encoded, true);
+    }
+
+    SNIServerName(final int type, final byte[] encoded, final boolean copy) {
         if (type < 0 || type > 255) throw new IllegalArgumentException();
         if (encoded == null) throw new NullPointerException();
         this.type = type;
-        this.encoded = encoded.clone();
+        this.encoded = copy ? encoded.clone() : encoded;
     }
 
     public boolean equals(final Object obj) {
@@ -47,6 +52,23 @@ public abstract class SNIServerName {
         return encoded.clone();
     }
 
+    /**
+     * Get the encoded name without copying it.
+     *
+     * @return a read-only buffer over the encoded name
+     */
+    public ByteBuffer getEncodedBuffer() {
+        return ByteBuffer.wrap(encoded).asReadOnlyBuffer();
+    }
+
+    public int getEncodedLength() {
+        return encoded.length;
+    }
+
+    byte[] getEncodedNoClone() {
+        return encoded;
+    }
+
     public int hashCode() {
         int hc = 17;
         hc = 31 * hc + type;
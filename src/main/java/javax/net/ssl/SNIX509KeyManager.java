@@ -0,0 +1,514 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.net.ssl;
+
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * An {@link X509ExtendedKeyManager} for servers hosting many names, which picks the server certificate from the SNI
+ * host name requested in the handshake in time proportional to the length of that name, whatever the number of
+ * aliases.
+ * <p>
+ * The DNS names of each alias come from the subject alternative names of its certificate, or from the most specific
+ * common name of the subject if there are none.  They are indexed by label from right to left; a leftmost {@code *}
+ * label matches exactly one label, and an exact name wins over a wildcard.  When several aliases share a name, the
+ * first one in key store order whose certificate is currently valid is chosen.  Without a usable SNI name, or when no
+ * alias matches it, the default alias is chosen if it is of the requested key type, and otherwise the first alias
+ * which is.
+ * <p>
+ * The key stores are read once, at construction, and certificates are interned with {@link CertificateInterner}.
+ * Private keys are only decrypted when first asked for, so that key stores with many entries load quickly; a key
+ * which cannot be recovered then is reported as {@code null} by {@link #getPrivateKey(String)}.
+ */
+public final class SNIX509KeyManager extends X509ExtendedKeyManager {
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private final Entry[] ordered;
+    private final Node root = new Node();
+    private final Entry defaultEntry;
+    private final ConcurrentHashMap<String, Entry> fallbacks = new ConcurrentHashMap<>();
+
+    public SNIX509KeyManager(final KeyStore keyStore, final char[] password) throws GeneralSecurityException {
+        this(keyStore, password, null);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param keyStore the loaded key store
+     * @param password the password of the private keys
+     * @param defaultAlias the alias to choose when the handshake does not name a known host, or {@code null} to
+     *      choose the first alias of the requested key type
+     * @throws GeneralSecurityException if the key store cannot be read, or {@code defaultAlias} is not a key entry
+     *      with an X.509 certificate
+     */
+    public SNIX509KeyManager(final KeyStore keyStore, final char[] password, final String defaultAlias) throws GeneralSecurityException {
+        if (keyStore == null) throw new NullPointerException();
+        final ArrayList<Entry> list = new ArrayList<>();
+        addEntries(list, "", keyStore, null, new KeyStore.PasswordProtection(password));
+        ordered = list.toArray(new Entry[list.size()]);
+        defaultEntry = findDefault(defaultAlias);
+    }
+
+    /**
+     * Construct a new instance from several key stores, which are loaded in parallel.  The aliases of this key
+     * manager are those of the key stores, each prefixed with the index of its builder and a dot, as in
+     * {@code 0.server}; the protection of each private key comes from its builder.
+     *
+     * @param parameters the key store builders
+     * @param pool the pool to load the key stores on
+     * @param defaultAlias the prefixed alias to choose when the handshake does not name a known host, or
+     *      {@code null} to choose the first alias of the requested key type
+     * @throws GeneralSecurityException if a key store cannot be loaded or read, or {@code defaultAlias} is not a key
+     *      entry with an X.509 certificate
+     */
+    public SNIX509KeyManager(final KeyStoreBuilderParameters parameters, final ForkJoinPool pool, final String defaultAlias) throws GeneralSecurityException {
+        if (parameters == null || pool == null) throw new NullPointerException();
+        final List<KeyStore.Builder> builders = parameters.getParameters();
+        final List<KeyStore> keyStores = parameters.loadKeyStores(pool);
+        final ArrayList<Entry> list = new ArrayList<>();
+        for (int i = 0; i < builders.size(); i ++) {
+            addEntries(list, i + ".", keyStores.get(i), builders.get(i), null);
+        }
+        ordered = list.toArray(new Entry[list.size()]);
+        defaultEntry = findDefault(defaultAlias);
+    }
+
+    private void addEntries(final ArrayList<Entry> list, final String prefix, final KeyStore keyStore, final KeyStore.Builder builder, final KeyStore.ProtectionParameter protection) throws GeneralSecurityException {
+        final Enumeration<String> aliases = keyStore.aliases();
+        while (aliases.hasMoreElements()) {
+            final String storeAlias = aliases.nextElement();
+            if (! keyStore.entryInstanceOf(storeAlias, KeyStore.PrivateKeyEntry.class)) {
+                continue;
+            }
+            final Certificate[] chain = keyStore.getCertificateChain(storeAlias);
+            if (chain == null || chain.length == 0) {
+                continue;
+            }
+            final X509Certificate[] x509Chain = new X509Certificate[chain.length];
+            boolean x509 = true;
+            for (int i = 0; i < chain.length; i ++) {
+                final Certificate certificate = CertificateInterner.intern(chain[i]);
+                if (! (certificate instanceof X509Certificate)) {
+                    x509 = false;
+                    break;
+                }
+                x509Chain[i] = (X509Certificate) certificate;
+            }
+            if (! x509) {
+                continue;
+            }
+            final KeyStore.ProtectionParameter entryProtection = builder == null ? protection : builder.getProtectionParameter(storeAlias);
+            final Entry entry = new Entry(prefix + storeAlias, keyStore, storeAlias, entryProtection, x509Chain);
+            entries.put(entry.alias, entry);
+            list.add(entry);
+            for (String name : HostnameMatcher.dnsNames(x509Chain[0])) {
+                index(name, entry);
+            }
+        }
+    }
+
+    private Entry findDefault(final String defaultAlias) throws KeyStoreException {
+        if (defaultAlias == null) {
+            return null;
+        }
+        final Entry entry = entries.get(defaultAlias);
+        if (entry == null) throw new KeyStoreException("No usable key entry " + defaultAlias);
+        return entry;
+    }
+
+    public String[] getClientAliases(final String keyType, final Principal[] issuers) {
+        return getAliases(keyType, issuers);
+    }
+
+    public String chooseClientAlias(final String[] keyTypes, final Principal[] issuers, final Socket socket) {
+        return chooseClientAlias(keyTypes, issuers);
+    }
+
+    public String chooseEngineClientAlias(final String[] keyTypes, final Principal[] issuers, final SSLEngine engine) {
+        return chooseClientAlias(keyTypes, issuers);
+    }
+
+    public String[] getServerAliases(final String keyType, final Principal[] issuers) {
+        return getAliases(keyType, issuers);
+    }
+
+    public String chooseServerAlias(final String keyType, final Principal[] issuers, final Socket socket) {
+        if (keyType == null) {
+            return null;
+        }
+        final SSLSession session = socket instanceof SSLSocket ? ((SSLSocket) socket).getHandshakeSession() : null;
+        return chooseServerAlias(keyType, issuers, session);
+    }
+
+    public String chooseEngineServerAlias(final String keyType, final Principal[] issuers, final SSLEngine engine) {
+        if (keyType == null) {
+            return null;
+        }
+        final SSLSession session = engine == null ? null : engine.getHandshakeSession();
+        return chooseServerAlias(keyType, issuers, session);
+    }
+
+    public X509Certificate[] getCertificateChain(final String alias) {
+        final Entry entry = alias == null ? null : entries.get(alias);
+        return entry == null ? null : entry.chain.clone();
+    }
+
+    public PrivateKey getPrivateKey(final String alias) {
+        final Entry entry = alias == null ? null : entries.get(alias);
+        return entry == null ? null : entry.getPrivateKey();
+    }
+
+    /**
+     * Get the certificate chain of an alias as the body of a TLS 1.2 {@code Certificate} message: the 24-bit length
+     * of the list, followed by each DER-encoded certificate with its own 24-bit length, leaf first.  The encoding is
+     * computed once per alias.
+     *
+     * @param alias the alias
+     * @return a read-only buffer holding the encoding, or {@code null} if there is no such alias
+     */
+    public ByteBuffer getEncodedCertificateChain(final String alias) {
+        final Entry entry = alias == null ? null : entries.get(alias);
+        return entry == null ? null : entry.getEncodedChain().asReadOnlyBuffer();
+    }
+
+    /**
+     * Choose the alias for a host name, as a handshake requesting it would.
+     *
+     * @param keyType the key type
+     * @param hostName the host name
+     * @return the alias, or {@code null} if no alias of the key type matches the host name
+     */
+    public String chooseServerAlias(final String keyType, final SNIHostName hostName) {
+        if (keyType == null || hostName == null) throw new NullPointerException();
+        final Entry entry = lookup(keyType, null, hostName.getAsciiName());
+        return entry == null ? null : entry.alias;
+    }
+
+    private String chooseServerAlias(final String keyType, final Principal[] issuers, final SSLSession session) {
+        final String hostName = HostnameMatcher.requestedHostName(session);
+        if (hostName != null) {
+            final Entry entry = lookup(keyType, issuers, hostName);
+            if (entry != null) {
+                return entry.alias;
+            }
+        }
+        final Entry entry = fallback(keyType, issuers);
+        return entry == null ? null : entry.alias;
+    }
+
+    private String chooseClientAlias(final String[] keyTypes, final Principal[] issuers) {
+        if (keyTypes == null) {
+            return null;
+        }
+        for (String keyType : keyTypes) {
+            if (keyType != null) {
+                final Entry entry = fallback(keyType, issuers);
+                if (entry != null) {
+                    return entry.alias;
+                }
+            }
+        }
+        return null;
+    }
+
+    private String[] getAliases(final String keyType, final Principal[] issuers) {
+        if (keyType == null) {
+            return null;
+        }
+        final ArrayList<String> list = new ArrayList<>();
+        for (Entry entry : ordered) {
+            if (entry.matches(keyType, issuers)) {
+                list.add(entry.alias);
+            }
+        }
+        return list.isEmpty() ? null : list.toArray(new String[list.size()]);
+    }
+
+    private Entry fallback(final String keyType, final Principal[] issuers) {
+        if (defaultEntry != null && defaultEntry.matches(keyType, issuers)) {
+            return defaultEntry;
+        }
+        final boolean anyIssuer = issuers == null || issuers.length == 0;
+        if (anyIssuer) {
+            final Entry cached = fallbacks.get(keyType);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        for (Entry entry : ordered) {
+            if (entry.matches(keyType, issuers)) {
+                if (anyIssuer) {
+                    fallbacks.putIfAbsent(keyType, entry);
+                }
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void index(final String name, final Entry entry) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".")) {
+            lower = lower.substring(0, lower.length() - 1);
+        }
+        final boolean wildcard = lower.startsWith("*.");
+        if (wildcard) {
+            lower = lower.substring(2);
+            // no wildcards over a single label, such as *.com
+            if (lower.indexOf('.') == -1) {
+                return;
+            }
+        }
+        if (lower.isEmpty() || lower.indexOf('*') != -1) {
+            return;
+        }
+        Node node = root;
+        int end = lower.length();
+        for (;;) {
+            final int dot = lower.lastIndexOf('.', end - 1);
+            final String label = lower.substring(dot + 1, end);
+            if (label.isEmpty()) {
+                return;
+            }
+            node = node.getOrCreateChild(label);
+            if (dot == -1) {
+                break;
+            }
+            end = dot;
+        }
+        if (wildcard) {
+            node.wildcard = add(node.wildcard, entry);
+        } else {
+            node.exact = add(node.exact, entry);
+        }
+    }
+
+    private Entry lookup(final String keyType, final Principal[] issuers, final String hostName) {
+        final String lower = hostName.toLowerCase(Locale.ROOT);
+        Node node = root;
+        Node parent = null;
+        int end = lower.length();
+        while (node != null) {
+            final int dot = lower.lastIndexOf('.', end - 1);
+            if (dot == -1) {
+                parent = node;
+            }
+            node = node.getChild(lower.substring(dot + 1, end));
+            if (dot == -1) {
+                break;
+            }
+            end = dot;
+        }
+        Entry entry = node == null ? null : select(node.exact, keyType, issuers);
+        if (entry == null && parent != null) {
+            entry = select(parent.wildcard, keyType, issuers);
+        }
+        return entry;
+    }
+
+    private static Entry select(final Entry[] candidates, final String keyType, final Principal[] issuers) {
+        if (candidates == null) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        Entry found = null;
+        for (Entry entry : candidates) {
+            if (entry.matches(keyType, issuers)) {
+                if (entry.isValid(now)) {
+                    return entry;
+                }
+                if (found == null) {
+                    found = entry;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static Entry[] add(final Entry[] array, final Entry entry) {
+        if (array == null) {
+            return new Entry[] { entry };
+        }
+        for (Entry existing : array) {
+            if (existing == entry) {
+                return array;
+            }
+        }
+        final Entry[] copy = new Entry[array.length + 1];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        copy[array.length] = entry;
+        return copy;
+    }
+
+    static final class Node {
+        private HashMap<String, Node> children;
+        Entry[] exact;
+        Entry[] wildcard;
+
+        Node getChild(final String label) {
+            final HashMap<String, Node> children = this.children;
+            return children == null ? null : children.get(label);
+        }
+
+        Node getOrCreateChild(final String label) {
+            HashMap<String, Node> children = this.children;
+            if (children == null) {
+                this.children = children = new HashMap<>(4);
+            }
+            return children.computeIfAbsent(label, ignored -> new Node());
+        }
+    }
+
+    static final class Entry {
+        private final String alias;
+        private final KeyStore keyStore;
+        private final String storeAlias;
+        private final KeyStore.ProtectionParameter protection;
+        private final X509Certificate[] chain;
+        private final String keyAlgorithm;
+        private final String signatureAlgorithm;
+        private final long notBefore;
+        private final long notAfter;
+        private volatile PrivateKey privateKey;
+        private volatile boolean unrecoverable;
+        private volatile ByteBuffer encodedChain;
+
+        Entry(final String alias, final KeyStore keyStore, final String storeAlias, final KeyStore.ProtectionParameter protection, final X509Certificate[] chain) {
+            this.alias = alias;
+            this.keyStore = keyStore;
+            this.storeAlias = storeAlias;
+            this.protection = protection;
+            this.chain = chain;
+            final X509Certificate leaf = chain[0];
+            keyAlgorithm = leaf.getPublicKey().getAlgorithm();
+            signatureAlgorithm = leaf.getSigAlgName().toUpperCase(Locale.ROOT);
+            notBefore = leaf.getNotBefore().getTime();
+            notAfter = leaf.getNotAfter().getTime();
+        }
+
+        boolean isValid(final long now) {
+            return notBefore <= now && now <= notAfter;
+        }
+
+        /**
+         * Check the key type, which is a key algorithm optionally followed by {@code _} and the key algorithm of the
+         * signature over the certificate, as in {@code EC_RSA}.
+         */
+        boolean matches(final String keyType, final Principal[] issuers) {
+            final int idx = keyType.indexOf('_');
+            if (idx == -1) {
+                if (! keyType.equalsIgnoreCase(keyAlgorithm)) {
+                    return false;
+                }
+            } else {
+                if (! keyType.regionMatches(true, 0, keyAlgorithm, 0, idx) || keyAlgorithm.length() != idx) {
+                    return false;
+                }
+                if (! signatureAlgorithm.contains("WITH" + keyType.substring(idx + 1).toUpperCase(Locale.ROOT))) {
+                    return false;
+                }
+            }
+            if (issuers == null || issuers.length == 0) {
+                return true;
+            }
+            for (X509Certificate certificate : chain) {
+                final X500Principal issuer = certificate.getIssuerX500Principal();
+                for (Principal principal : issuers) {
+                    if (issuer.equals(principal)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Get the private key, decrypting it on first use.  Key stores are not thread-safe, so decryption is
+         * serialized per key store.
+         */
+        PrivateKey getPrivateKey() {
+            PrivateKey privateKey = this.privateKey;
+            if (privateKey == null && ! unrecoverable) {
+                synchronized (keyStore) {
+                    privateKey = this.privateKey;
+                    if (privateKey == null && ! unrecoverable) {
+                        try {
+                            final KeyStore.Entry entry = keyStore.getEntry(storeAlias, protection);
+                            if (entry instanceof KeyStore.PrivateKeyEntry) {
+                                this.privateKey = privateKey = ((KeyStore.PrivateKeyEntry) entry).getPrivateKey();
+                            } else {
+                                unrecoverable = true;
+                            }
+                        } catch (GeneralSecurityException ignored) {
+                            unrecoverable = true;
+                        }
+                    }
+                }
+            }
+            return privateKey;
+        }
+
+        ByteBuffer getEncodedChain() {
+            ByteBuffer encodedChain = this.encodedChain;
+            if (encodedChain == null) {
+                final byte[][] encodings = new byte[chain.length][];
+                int length = 0;
+                for (int i = 0; i < chain.length; i ++) {
+                    final X509Certificate certificate = chain[i];
+                    try {
+                        encodings[i] = certificate instanceof InternedX509Certificate ? ((InternedX509Certificate) certificate).getEncodedNoClone() : certificate.getEncoded();
+                    } catch (GeneralSecurityException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    length += 3 + encodings[i].length;
+                }
+                final ByteBuffer buffer = ByteBuffer.allocate(3 + length);
+                putLength(buffer, length);
+                for (byte[] encoding : encodings) {
+                    putLength(buffer, encoding.length);
+                    buffer.put(encoding);
+                }
+                buffer.flip();
+                this.encodedChain = encodedChain = buffer;
+            }
+            return encodedChain;
+        }
+
+        private static void putLength(final ByteBuffer buffer, final int length) {
+            buffer.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of direct buffers for driving {@link SSLEngine}s, sized by {@link SSLSession#getPacketBufferSize()} and
+ * {@link SSLSession#getApplicationBufferSize()}.
+ * <p>
+ * Pooled memory is carved out of large direct slabs and never exceeds the configured maximum; once that is reached,
+ * requests are served with unpooled heap buffers.  Requests larger than the biggest size class are also unpooled.
+ * Each thread keeps a small cache of released buffers per size class in front of the shared free lists; the cache of
+ * a thread which has terminated is handed back to the shared free lists the next time a thread cache is created or the
+ * pool runs out of direct memory.
+ * <p>
+ * Every lease gets a handle of its own, so releasing a handle a second time is always detected, even once its memory
+ * has been leased again.
+ * <p>
+ * With leak detection enabled, a buffer whose handle becomes unreachable without having been released is counted.
+ * Its memory is not reused, as whoever dropped the handle may still hold the {@code ByteBuffer}; it stays counted
+ * against the maximum, as reported by {@link #getLeakedBytes()}.
+ */
+public final class SSLBufferPool {
+
+    private static final int SLAB_SIZE = 1 << 20;
+
+    private final SizeClass[] sizeClasses;
+    private final long maxDirectBytes;
+    private final ThreadLocal<ThreadCache> threadCache;
+    private final Set<ThreadCache> threadCaches;
+    private final ReferenceQueue<PooledBuffer> leakQueue;
+    private final Set<LeakReference> leakReferences;
+
+    private final AtomicLong directBytes = new AtomicLong();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder threadCacheHits = new LongAdder();
+    private final LongAdder unpooled = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder leakedBytes = new LongAdder();
+
+    public SSLBufferPool(final int[] sizes, final long maxDirectBytes, final int threadCacheSize, final boolean leakDetection) {
+        if (sizes == null) throw new NullPointerException();
+        if (sizes.length == 0 || maxDirectBytes < 0 || threadCacheSize < 0) throw new IllegalArgumentException();
+        final int[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i ++) {
+            if (sorted[i] <= 0) throw new IllegalArgumentException();
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        sizeClasses = new SizeClass[count];
+        for (int i = 0; i < count; i ++) {
+            sizeClasses[i] = new SizeClass(i, sorted[i]);
+        }
+        this.maxDirectBytes = maxDirectBytes;
+        if (threadCacheSize > 0) {
+            final int classCount = count;
+            threadCaches = ConcurrentHashMap.newKeySet();
+            threadCache = ThreadLocal.withInitial(() -> {
+                reclaimThreadCaches();
+                final ThreadCache cache = new ThreadCache(Thread.currentThread(), classCount, threadCacheSize);
+                threadCaches.add(cache);
+                return cache;
+            });
+        } else {
+            threadCaches = null;
+            threadCache = null;
+        }
+        if (leakDetection) {
+            leakQueue = new ReferenceQueue<>();
+            leakReferences = ConcurrentHashMap.newKeySet();
+        } else {
+            leakQueue = null;
+            leakReferences = null;
+        }
+    }
+
+    public static SSLBufferPool forSession(final SSLSession session, final long maxDirectBytes) {
+        return new SSLBufferPool(new int[] { session.getApplicationBufferSize(), session.getPacketBufferSize() }, maxDirectBytes, 16, false);
+    }
+
+    public PooledBuffer acquire(final int size) {
+        if (size < 0) throw new IllegalArgumentException();
+        acquired.increment();
+        if (leakQueue != null) {
+            reclaimLeaks();
+        }
+        final SizeClass sizeClass = sizeClassFor(size);
+        if (sizeClass == null) {
+            unpooled.increment();
+            return new PooledBuffer(null, ByteBuffer.allocate(size));
+        }
+        ByteBuffer buffer = null;
+        if (threadCache != null) {
+            buffer = threadCache.get().pop(sizeClass.index);
+            if (buffer != null) {
+                threadCacheHits.increment();
+            }
+        }
+        if (buffer == null) {
+            buffer = sizeClass.take();
+        }
+        if (buffer == null && threadCaches != null && reclaimThreadCaches()) {
+            buffer = sizeClass.take();
+        }
+        if (buffer == null) {
+            unpooled.increment();
+            return new PooledBuffer(null, ByteBuffer.allocate(sizeClass.size));
+        }
+        return lease(sizeClass, buffer);
+    }
+
+    private PooledBuffer lease(final SizeClass sizeClass, final ByteBuffer buffer) {
+        buffer.clear();
+        final PooledBuffer pooledBuffer = new PooledBuffer(sizeClass, buffer);
+        if (leakQueue != null) {
+            final LeakReference leakReference = new LeakReference(pooledBuffer, leakQueue);
+            leakReferences.add(leakReference);
+            pooledBuffer.leakReference = leakReference;
+        }
+        return pooledBuffer;
+    }
+
+    public PooledBuffer acquirePacketBuffer(final SSLSession session) {
+        return acquire(session.getPacketBufferSize());
+    }
+
+    public PooledBuffer acquireApplicationBuffer(final SSLSession session) {
+        return acquire(session.getApplicationBufferSize());
+    }
+
+    public long getMaxDirectBytes() {
+        return maxDirectBytes;
+    }
+
+    public long getDirectBytes() {
+        return directBytes.get();
+    }
+
+    public long getAcquireCount() {
+        return acquired.sum();
+    }
+
+    public long getReleaseCount() {
+        return released.sum();
+    }
+
+    public long getThreadCacheHitCount() {
+        return threadCacheHits.sum();
+    }
+
+    public long getUnpooledCount() {
+        return unpooled.sum();
+    }
+
+    public long getLeakCount() {
+        return leaks.sum();
+    }
+
+    public long getLeakedBytes() {
+        return leakedBytes.sum();
+    }
+
+    private SizeClass sizeClassFor(final int size) {
+        for (SizeClass sizeClass : sizeClasses) {
+            if (size <= sizeClass.size) {
+                return sizeClass;
+            }
+        }
+        return null;
+    }
+
+    private void reclaimLeaks() {
+        Reference<? extends PooledBuffer> ref;
+        while ((ref = leakQueue.poll()) != null) {
+            final LeakReference leakReference = (LeakReference) ref;
+            if (leakReferences.remove(leakReference)) {
+                // dropped rather than reused, so that a stale ByteBuffer cannot reach another lease's data
+                leaks.increment();
+                leakedBytes.add(leakReference.size);
+            }
+        }
+    }
+
+    /**
+     * Hand the cached buffers of terminated threads back to the shared free lists.
+     *
+     * @return {@code true} if any buffer was handed back
+     */
+    private boolean reclaimThreadCaches() {
+        boolean reclaimed = false;
+        final Iterator<ThreadCache> iterator = threadCaches.iterator();
+        while (iterator.hasNext()) {
+            final ThreadCache cache = iterator.next();
+            if (cache.isOwnerTerminated()) {
+                iterator.remove();
+                reclaimed |= cache.drainTo(sizeClasses);
+            }
+        }
+        return reclaimed;
+    }
+
+    void release(final PooledBuffer buffer) {
+        released.increment();
+        final LeakReference leakReference = buffer.leakReference;
+        if (leakReference != null) {
+            buffer.leakReference = null;
+            leakReferences.remove(leakReference);
+            leakReference.clear();
+        }
+        final SizeClass sizeClass = buffer.sizeClass;
+        if (threadCache != null && threadCache.get().push(sizeClass.index, buffer.buffer)) {
+            return;
+        }
+        sizeClass.put(buffer.buffer);
+    }
+
+    final class SizeClass {
+        private final int index;
+        private final int size;
+        private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+        SizeClass(final int index, final int size) {
+            this.index = index;
+            this.size = size;
+        }
+
+        SSLBufferPool pool() {
+            return SSLBufferPool.this;
+        }
+
+        ByteBuffer take() {
+            synchronized (free) {
+                final ByteBuffer buffer = free.pollFirst();
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+            return allocateSlab();
+        }
+
+        void put(final ByteBuffer buffer) {
+            synchronized (free) {
+                free.addFirst(buffer);
+            }
+        }
+
+        private ByteBuffer allocateSlab() {
+            final int chunks = Math.max(1, SLAB_SIZE / size);
+            final long slabBytes = (long) chunks * size;
+            int granted = chunks;
+            long reserved;
+            for (;;) {
+                final long current = directBytes.get();
+                final long available = maxDirectBytes - current;
+                if (available < size) {
+                    return null;
+                }
+                if (available < slabBytes) {
+                    granted = (int) (available / size);
+                }
+                reserved = (long) granted * size;
+                if (directBytes.compareAndSet(current, current + reserved)) {
+                    break;
+                }
+                granted = chunks;
+            }
+            final ByteBuffer slab = ByteBuffer.allocateDirect((int) reserved);
+            ByteBuffer first = null;
+            for (int i = 0; i < granted; i ++) {
+                slab.limit((i + 1) * size).position(i * size);
+                final ByteBuffer buffer = slab.slice();
+                if (first == null) {
+                    first = buffer;
+                } else {
+                    put(buffer);
+                }
+            }
+            return first;
+        }
+    }
+
+    static final class ThreadCache {
+        private final WeakReference<Thread> owner;
+        private final ByteBuffer[][] stacks;
+        private final int[] counts;
+
+        ThreadCache(final Thread owner, final int classCount, final int size) {
+            this.owner = new WeakReference<>(owner);
+            stacks = new ByteBuffer[classCount][size];
+            counts = new int[classCount];
+        }
+
+        boolean isOwnerTerminated() {
+            final Thread thread = owner.get();
+            return thread == null || ! thread.isAlive();
+        }
+
+        /**
+         * Move every cached buffer to the shared free lists.  Only call this once the owner has terminated.
+         */
+        boolean drainTo(final SizeClass[] sizeClasses) {
+            boolean drained = false;
+            for (int index = 0; index < stacks.length; index ++) {
+                final ByteBuffer[] stack = stacks[index];
+                for (int i = 0; i < counts[index]; i ++) {
+                    sizeClasses[index].put(stack[i]);
+                    stack[i] = null;
+                    drained = true;
+                }
+                counts[index] = 0;
+            }
+            return drained;
+        }
+
+        ByteBuffer pop(final int index) {
+            final int count = counts[index];
+            if (count == 0) {
+                return null;
+            }
+            final ByteBuffer[] stack = stacks[index];
+            final ByteBuffer buffer = stack[count - 1];
+            stack[count - 1] = null;
+            counts[index] = count - 1;
+            return buffer;
+        }
+
+        boolean push(final int index, final ByteBuffer buffer) {
+            final int count = counts[index];
+            final ByteBuffer[] stack = stacks[index];
+            if (count == stack.length) {
+                return false;
+            }
+            stack[count] = buffer;
+            counts[index] = count + 1;
+            return true;
+        }
+    }
+
+    static final class LeakReference extends WeakReference<PooledBuffer> {
+        private final int size;
+
+        LeakReference(final PooledBuffer referent, final ReferenceQueue<PooledBuffer> queue) {
+            super(referent, queue);
+            size = referent.sizeClass.size;
+        }
+    }
+
+    /**
+     * A buffer leased from a pool.  Each lease has a handle of its own.  Pooled buffers must be released exactly once,
+     * after which the buffer must no longer be used.
+     */
+    public static final class PooledBuffer {
+        private static final AtomicIntegerFieldUpdater<PooledBuffer> stateUpdater = AtomicIntegerFieldUpdater.newUpdater(PooledBuffer.class, "state");
+
+        private static final int FREE = 0;
+        private static final int LEASED = 1;
+
+        private final SizeClass sizeClass;
+        private final ByteBuffer buffer;
+        @SuppressWarnings("unused")
+        private volatile int state;
+        private LeakReference leakReference;
+
+        PooledBuffer(final SizeClass sizeClass, final ByteBuffer buffer) {
+            this.sizeClass = sizeClass;
+            this.buffer = buffer;
+            state = LEASED;
+        }
+
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        public boolean isPooled() {
+            return sizeClass != null;
+        }
+
+        public void release() throws IllegalStateException {
+            if (! stateUpdater.compareAndSet(this, LEASED, FREE)) {
+                throw new IllegalStateException("Buffer already released");
+            }
+            if (sizeClass != null) {
+                sizeClass.pool().release(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.net.ssl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a TLS ClientHello needed to route a connection before an {@link SSLContext} is chosen: the requested
+ * server names, the offered application (ALPN) and TLS protocols, the cipher suites and the extensions.
+ * <p>
+ * {@link #parse(ByteBuffer)} reads the records at the position of a buffer without moving it.  While the records
+ * holding the ClientHello are incomplete it returns {@code null}, so the caller can read more into the same buffer
+ * and try again.  When the message lies in a single record, which is almost always the case, nothing is copied
+ * except the server and protocol names; a message fragmented over several records is reassembled first.
+ */
+public final class SSLClientHello {
+
+    private static final int CONTENT_TYPE_HANDSHAKE = 22;
+    private static final int HANDSHAKE_CLIENT_HELLO = 1;
+    private static final int MAX_FRAGMENT_LENGTH = 1 << 14;
+    // far above any real ClientHello, bounding what a peer can make us buffer
+    private static final int MAX_MESSAGE_LENGTH = 1 << 16;
+
+    public static final int EXTENSION_SERVER_NAME = 0;
+    public static final int EXTENSION_APPLICATION_LAYER_PROTOCOL_NEGOTIATION = 16;
+    public static final int EXTENSION_SUPPORTED_VERSIONS = 43;
+
+    private final ByteBuffer message;
+    private final int length;
+    private final int legacyVersion;
+    private final int[] cipherSuites;
+    private final int[] extensionTypes;
+    private final int[] extensionOffsets;
+    private final int[] extensionLengths;
+    private List<SNIServerName> serverNames;
+    private List<String> applicationProtocols;
+    private List<String> protocols;
+
+    private SSLClientHello(final ByteBuffer message, final int length, final int legacyVersion, final int[] cipherSuites, final int[] extensionTypes, final int[] extensionOffsets, final int[] extensionLengths) {
+        this.message = message;
+        this.length = length;
+        this.legacyVersion = legacyVersion;
+        this.cipherSuites = cipherSuites;
+        this.extensionTypes = extensionTypes;
+        this.extensionOffsets = extensionOffsets;
+        this.extensionLengths = extensionLengths;
+    }
+
+    /**
+     * Parse the ClientHello at the position of a buffer.  The position and limit of the buffer are not changed.
+     *
+     * @param buffer the buffer holding the first bytes received on a connection
+     * @return the ClientHello, or {@code null} if the buffer does not hold all of it yet
+     * @throws SSLProtocolException if the bytes are not a well-formed TLS ClientHello
+     */
+    public static SSLClientHello parse(final ByteBuffer buffer) throws SSLProtocolException {
+        if (buffer == null) throw new NullPointerException();
+        final int start = buffer.position();
+        final int limit = buffer.limit();
+        // offsets and lengths of the handshake fragments, typically just one
+        int[] fragments = new int[2];
+        int fragmentCount = 0;
+        int available = 0;
+        int needed = 4;
+        int pos = start;
+        while (available < needed) {
+            if (limit - pos < 5) {
+                return null;
+            }
+            final int contentType = buffer.get(pos) & 0xff;
+            if (contentType != CONTENT_TYPE_HANDSHAKE) {
+                if (pos == start && (contentType & 0x80) != 0) {
+                    throw new SSLProtocolException("SSLv2 ClientHello is not supported");
+                }
+                throw new SSLProtocolException("Expected a handshake record, got content type " + contentType);
+            }
+            if (buffer.get(pos + 1) != 3) {
+                throw new SSLProtocolException("Unsupported record version");
+            }
+            final int fragmentLength = buffer.getShort(pos + 3) & 0xffff;
+            if (fragmentLength == 0 || fragmentLength > MAX_FRAGMENT_LENGTH) {
+                throw new SSLProtocolException("Invalid record length " + fragmentLength);
+            }
+            if (limit - pos - 5 < fragmentLength) {
+                return null;
+            }
+            if (fragmentCount * 2 == fragments.length) {
+                final int[] grown = new int[fragments.length << 1];
+                System.arraycopy(fragments, 0, grown, 0, fragments.length);
+                fragments = grown;
+            }
+            fragments[fragmentCount * 2] = pos + 5;
+            fragments[fragmentCount * 2 + 1] = fragmentLength;
+            fragmentCount ++;
+            available += fragmentLength;
+            pos += 5 + fragmentLength;
+            if (needed == 4 && available >= 4) {
+                if (handshakeByte(buffer, fragments, 0) != HANDSHAKE_CLIENT_HELLO) {
+                    throw new SSLProtocolException("Expected a ClientHello");
+                }
+                final int messageLength = handshakeByte(buffer, fragments, 1) << 16 | handshakeByte(buffer, fragments, 2) << 8 | handshakeByte(buffer, fragments, 3);
+                if (messageLength > MAX_MESSAGE_LENGTH) {
+                    throw new SSLProtocolException("ClientHello too large");
+                }
+                needed = 4 + messageLength;
+            }
+        }
+        // the remainder of the last record is not part of a ClientHello
+        if (available != needed) {
+            throw new SSLProtocolException("Unexpected data after ClientHello");
+        }
+        final ByteBuffer message;
+        if (fragmentCount == 1) {
+            final ByteBuffer duplicate = buffer.duplicate();
+            duplicate.limit(fragments[0] + needed).position(fragments[0]);
+            message = duplicate.slice().asReadOnlyBuffer();
+        } else {
+            final ByteBuffer copy = ByteBuffer.allocate(needed);
+            for (int i = 0; copy.hasRemaining(); i ++) {
+                final ByteBuffer duplicate = buffer.duplicate();
+                final int offset = fragments[i * 2];
+                duplicate.limit(offset + fragments[i * 2 + 1]).position(offset);
+                copy.put(duplicate);
+            }
+            copy.flip();
+            message = copy.asReadOnlyBuffer();
+        }
+        return parseMessage(message, pos - start);
+    }
+
+    private static int handshakeByte(final ByteBuffer buffer, final int[] fragments, int index) {
+        for (int i = 0;; i ++) {
+            final int fragmentLength = fragments[i * 2 + 1];
+            if (index < fragmentLength) {
+                return buffer.get(fragments[i * 2] + index) & 0xff;
+            }
+            index -= fragmentLength;
+        }
+    }
+
+    private static SSLClientHello parseMessage(final ByteBuffer message, final int length) throws SSLProtocolException {
+        final int end = message.limit();
+        int pos = 4;
+        check(message, pos, 2 + 32 + 1);
+        final int legacyVersion = message.getShort(pos) & 0xffff;
+        pos += 2 + 32;
+        final int sessionIdLength = message.get(pos) & 0xff;
+        if (sessionIdLength > 32) {
+            throw new SSLProtocolException("Invalid session ID length");
+        }
+        pos += 1 + sessionIdLength;
+        check(message, pos, 2);
+        final int cipherSuitesLength = message.getShort(pos) & 0xffff;
+        pos += 2;
+        if (cipherSuitesLength == 0 || (cipherSuitesLength & 1) != 0) {
+            throw new SSLProtocolException("Invalid cipher suites length");
+        }
+        check(message, pos, cipherSuitesLength);
+        final int[] cipherSuites = new int[cipherSuitesLength >> 1];
+        for (int i = 0; i < cipherSuites.length; i ++) {
+            cipherSuites[i] = message.getShort(pos + 2 * i) & 0xffff;
+        }
+        pos += cipherSuitesLength;
+        check(message, pos, 1);
+        final int compressionMethodsLength = message.get(pos) & 0xff;
+        pos += 1;
+        check(message, pos, compressionMethodsLength);
+        pos += compressionMethodsLength;
+        int[] types = new int[0];
+        int[] offsets = types;
+        int[] lengths = types;
+        if (pos < end) {
+            check(message, pos, 2);
+            final int extensionsLength = message.getShort(pos) & 0xffff;
+            pos += 2;
+            if (extensionsLength != end - pos) {
+                throw new SSLProtocolException("Invalid extensions length");
+            }
+            int count = 0;
+            for (int p = pos; p < end; count ++) {
+                check(message, p, 4);
+                final int extensionLength = message.getShort(p + 2) & 0xffff;
+                p += 4;
+                check(message, p, extensionLength);
+                p += extensionLength;
+            }
+            types = new int[count];
+            offsets = new int[count];
+            lengths = new int[count];
+            for (int i = 0; i < count; i ++) {
+                final int type = message.getShort(pos) & 0xffff;
+                for (int j = 0; j < i; j ++) {
+                    if (types[j] == type) {
+                        throw new SSLProtocolException("Duplicate extension " + type);
+                    }
+                }
+                types[i] = type;
+                lengths[i] = message.getShort(pos + 2) & 0xffff;
+                offsets[i] = pos + 4;
+                pos += 4 + lengths[i];
+            }
+        }
+        final SSLClientHello hello = new SSLClientHello(message, length, legacyVersion, cipherSuites, types, offsets, lengths);
+        // validate what is decoded lazily, so a malformed hello fails here and not in a getter
+        hello.serverNames = hello.decodeServerNames();
+        hello.applicationProtocols = hello.decodeApplicationProtocols();
+        hello.protocols = hello.decodeProtocols();
+        return hello;
+    }
+
+    private static void check(final ByteBuffer message, final int pos, final int length) throws SSLProtocolException {
+        if (message.limit() - pos < length) {
+            throw new SSLProtocolException("Truncated ClientHello");
+        }
+    }
+
+    /**
+     * Get the number of bytes, from the position of the parsed buffer, of the records holding the ClientHello.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the {@code legacy_version} field, such as {@code 0x0303} for TLS 1.2.
+     */
+    public int getLegacyVersion() {
+        return legacyVersion;
+    }
+
+    /**
+     * Get the offered TLS protocols, such as {@code TLSv1.3}, from the {@code supported_versions} extension, or from
+     * the legacy version if there is none.  Unknown versions are left out.
+     */
+    public List<String> getProtocols() {
+        return protocols;
+    }
+
+    /**
+     * Get the offered cipher suites, by their two-byte code.
+     */
+    public int[] getCipherSuites() {
+        return cipherSuites.clone();
+    }
+
+    public List<SNIServerName> getServerNames() {
+        return serverNames;
+    }
+
+    /**
+     * Get the offered ALPN protocols, each byte read as one ISO-8859-1 character, as {@link SSLEngine} does.
+     *
+     * @return the protocols, empty if the client did not offer any
+     */
+    public List<String> getApplicationProtocols() {
+        return applicationProtocols;
+    }
+
+    /**
+     * Get the extension types, in the order the client sent them.
+     */
+    public int[] getExtensionTypes() {
+        return extensionTypes.clone();
+    }
+
+    /**
+     * Get the data of an extension.  When the ClientHello came in a single record, the data is a view of the parsed
+     * buffer, and so only valid until the caller overwrites it.
+     *
+     * @param type the extension type
+     * @return a read-only buffer holding the extension data, or {@code null} if the client did not send it
+     */
+    public ByteBuffer getExtension(final int type) {
+        for (int i = 0; i < extensionTypes.length; i ++) {
+            if (extensionTypes[i] == type) {
+                final ByteBuffer duplicate = message.duplicate();
+                duplicate.limit(extensionOffsets[i] + extensionLengths[i]).position(extensionOffsets[i]);
+                return duplicate.slice();
+            }
+        }
+        return null;
+    }
+
+    private List<SNIServerName> decodeServerNames() throws SSLProtocolException {
+        final ByteBuffer data = getExtension(EXTENSION_SERVER_NAME);
+        if (data == null || ! data.hasRemaining()) {
+            // an empty extension is what a server sends back; tolerate it
+            return Collections.emptyList();
+        }
+        if (data.remaining() < 2 || (data.getShort(0) & 0xffff) != data.remaining() - 2) {
+            throw new SSLProtocolException("Invalid server_name extension");
+        }
+        final ArrayList<SNIServerName> names = new ArrayList<>(1);
+        int pos = 2;
+        while (pos < data.limit()) {
+            if (data.limit() - pos < 3) {
+                throw new SSLProtocolException("Invalid server_name extension");
+            }
+            final int type = data.get(pos) & 0xff;
+            final int nameLength = data.getShort(pos + 1) & 0xffff;
+            pos += 3;
+            if (nameLength == 0 || data.limit() - pos < nameLength) {
+                throw new SSLProtocolException("Invalid server_name extension");
+            }
+            for (SNIServerName name : names) {
+                if (name.getType() == type) {
+                    throw new SSLProtocolException("Duplicate server name type " + type);
+                }
+            }
+            final byte[] encoded = new byte[nameLength];
+            for (int i = 0; i < nameLength; i ++) {
+                encoded[i] = data.get(pos + i);
+            }
+            pos += nameLength;
+            if (type == StandardConstants.SNI_HOST_NAME) {
+                try {
+                    // not interned: the name comes from the peer, and random names would churn the shared table
+                    names.add(new SNIHostName(encoded));
+                } catch (IllegalArgumentException e) {
+                    throw new SSLProtocolException("Invalid host_name " + e.getMessage());
+                }
+            } else {
+                names.add(new OtherServerName(type, encoded));
+            }
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    private List<String> decodeApplicationProtocols() throws SSLProtocolException {
+        final ByteBuffer data = getExtension(EXTENSION_APPLICATION_LAYER_PROTOCOL_NEGOTIATION);
+        if (data == null) {
+            return Collections.emptyList();
+        }
+        if (data.remaining() < 2 || (data.getShort(0) & 0xffff) != data.remaining() - 2) {
+            throw new SSLProtocolException("Invalid application_layer_protocol_negotiation extension");
+        }
+        final ArrayList<String> list = new ArrayList<>(2);
+        int pos = 2;
+        while (pos < data.limit()) {
+            final int protocolLength = data.get(pos) & 0xff;
+            pos += 1;
+            if (protocolLength == 0 || data.limit() - pos < protocolLength) {
+                throw new SSLProtocolException("Invalid application_layer_protocol_negotiation extension");
+            }
+            final char[] chars = new char[protocolLength];
+            for (int i = 0; i < protocolLength; i ++) {
+                chars[i] = (char) (data.get(pos + i) & 0xff);
+            }
+            list.add(new String(chars));
+            pos += protocolLength;
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    private List<String> decodeProtocols() throws SSLProtocolException {
+        final ByteBuffer data = getExtension(EXTENSION_SUPPORTED_VERSIONS);
+        if (data == null) {
+            final String name = protocolName(legacyVersion);
+            return name == null ? Collections.<String>emptyList() : Collections.singletonList(name);
+        }
+        if (! data.hasRemaining() || (data.get(0) & 0xff) != data.remaining() - 1 || (data.get(0) & 1) != 0) {
+            throw new SSLProtocolException("Invalid supported_versions extension");
+        }
+        final ArrayList<String> list = new ArrayList<>(2);
+        for (int pos = 1; pos < data.limit(); pos += 2) {
+            final String name = protocolName(data.getShort(pos) & 0xffff);
+            if (name != null) {
+                list.add(name);
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    private static String protocolName(final int version) {
+        switch (version) {
+            case 0x0304: return "TLSv1.3";
+            case 0x0303: return "TLSv1.2";
+            case 0x0302: return "TLSv1.1";
+            case 0x0301: return "TLSv1";
+            case 0x0300: return "SSLv3";
+            // GREASE and unknown versions
+            default: return null;
+        }
+    }
+
+    /**
+     * A server name of a type other than {@code host_name}.
+     */
+    static final class OtherServerName extends SNIServerName {
+        OtherServerName(final int type, final byte[] encoded) {
+            super(type, encoded, false);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The network and application buffers of a single {@link SSLEngine} connection, borrowed from an
+ * {@link SSLBufferPool} on first use and handed back as soon as they are drained.  An idle connection holds no buffers.
+ * <p>
+ * All buffers are kept in "fill" mode: data is pending exactly when {@code position() > 0}.  Instances are not
+ * thread-safe.
+ */
+public final class SSLConnectionBuffers {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SSLEngine engine;
+    private final SSLBufferPool pool;
+    private SSLBufferPool.PooledBuffer netIn;
+    private SSLBufferPool.PooledBuffer netOut;
+    private SSLBufferPool.PooledBuffer appIn;
+
+    public SSLConnectionBuffers(final SSLEngine engine, final SSLBufferPool pool) {
+        if (engine == null || pool == null) throw new NullPointerException();
+        this.engine = engine;
+        this.pool = pool;
+    }
+
+    public SSLEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Get the buffer to read network data into.
+     */
+    public ByteBuffer getNetworkInput() {
+        SSLBufferPool.PooledBuffer netIn = this.netIn;
+        if (netIn == null) {
+            this.netIn = netIn = pool.acquirePacketBuffer(engine.getSession());
+        }
+        return netIn.getBuffer();
+    }
+
+    /**
+     * Get the buffer holding encrypted data waiting to be written to the network.
+     */
+    public ByteBuffer getNetworkOutput() {
+        SSLBufferPool.PooledBuffer netOut = this.netOut;
+        if (netOut == null) {
+            this.netOut = netOut = pool.acquirePacketBuffer(engine.getSession());
+        }
+        return netOut.getBuffer();
+    }
+
+    /**
+     * Get the buffer holding decrypted data waiting to be consumed by the application.
+     */
+    public ByteBuffer getApplicationInput() {
+        SSLBufferPool.PooledBuffer appIn = this.appIn;
+        if (appIn == null) {
+            this.appIn = appIn = pool.acquireApplicationBuffer(engine.getSession());
+        }
+        return appIn.getBuffer();
+    }
+
+    public SSLEngineResult wrap(final ByteBuffer[] srcs, final int offs, final int length) throws SSLException {
+        for (;;) {
+            final ByteBuffer dst = getNetworkOutput();
+            final SSLEngineResult result = engine.wrap(srcs, offs, length, dst);
+            if (result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW || dst.capacity() >= engine.getSession().getPacketBufferSize()) {
+                return result;
+            }
+            netOut = grow(netOut, engine.getSession().getPacketBufferSize());
+        }
+    }
+
+    public SSLEngineResult wrap(final ByteBuffer src) throws SSLException {
+        return wrap(new ByteBuffer[] { src }, 0, 1);
+    }
+
+    public SSLEngineResult wrapHandshake() throws SSLException {
+        return wrap(EMPTY);
+    }
+
+    public SSLEngineResult unwrap() throws SSLException {
+        for (;;) {
+            final ByteBuffer src = getNetworkInput();
+            final ByteBuffer dst = getApplicationInput();
+            final SSLEngineResult result;
+            src.flip();
+            try {
+                result = engine.unwrap(src, dst);
+            } finally {
+                src.compact();
+            }
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW: {
+                    if (dst.capacity() >= engine.getSession().getApplicationBufferSize()) {
+                        return result;
+                    }
+                    appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                    break;
+                }
+                case BUFFER_UNDERFLOW: {
+                    if (src.hasRemaining() || src.capacity() >= engine.getSession().getPacketBufferSize()) {
+                        return result;
+                    }
+                    netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+                    return result;
+                }
+                default: {
+                    return result;
+                }
+            }
+        }
+    }
+
+    /**
+     * Give back every buffer which has no pending data.  Call this whenever the connection goes idle; the buffers are
+     * borrowed again on the next read or write.
+     *
+     * @return {@code true} if the connection now holds no buffers at all
+     */
+    public boolean releaseIfDrained() {
+        netIn = releaseIfEmpty(netIn);
+        netOut = releaseIfEmpty(netOut);
+        appIn = releaseIfEmpty(appIn);
+        return netIn == null && netOut == null && appIn == null;
+    }
+
+    /**
+     * Give back every buffer, discarding pending data.  Call this when the connection is closed.
+     */
+    public void release() {
+        if (netIn != null) {
+            netIn.release();
+            netIn = null;
+        }
+        if (netOut != null) {
+            netOut.release();
+            netOut = null;
+        }
+        if (appIn != null) {
+            appIn.release();
+            appIn = null;
+        }
+    }
+
+    public boolean isHoldingBuffers() {
+        return netIn != null || netOut != null || appIn != null;
+    }
+
+    private static SSLBufferPool.PooledBuffer releaseIfEmpty(final SSLBufferPool.PooledBuffer buffer) {
+        if (buffer != null && buffer.getBuffer().position() == 0) {
+            buffer.release();
+            return null;
+        }
+        return buffer;
+    }
+
+    private SSLBufferPool.PooledBuffer grow(final SSLBufferPool.PooledBuffer old, final int size) {
+        final SSLBufferPool.PooledBuffer replacement = pool.acquire(size);
+        final ByteBuffer oldBuffer = old.getBuffer();
+        oldBuffer.flip();
+        replacement.getBuffer().put(oldBuffer);
+        old.release();
+        return replacement;
+    }
+}
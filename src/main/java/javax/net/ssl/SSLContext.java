@@ -66,12 +66,9 @@ public class SSLContext {
 
     public static SSLContext getInstance(String algorithm) throws NoSuchAlgorithmException, NullPointerException {
         if (algorithm == null) throw new NullPointerException();
-        final Provider[] providers = Security.getProviders();
-        for (Provider provider : providers) {
-            final Provider.Service service = provider.getService("SSLContext", algorithm);
-            if (service != null) {
-                return new SSLContext((SSLContextSpi) service.newInstance(null), provider, algorithm);
-            }
+        final ServiceCache.Entry entry = ServiceCache.find("SSLContext", algorithm);
+        if (entry != null) {
+            return new SSLContext((SSLContextSpi) entry.newInstance(), entry.getProvider(), algorithm);
         }
         throw new NoSuchAlgorithmException();
     }
@@ -80,9 +77,9 @@ public class SSLContext {
         if (algorithm == null || providerName == null) throw new NullPointerException();
         final Provider provider = Security.getProvider(providerName);
         if (provider == null) throw new NoSuchProviderException();
-        final Provider.Service service = provider.getService("SSLContext", algorithm);
-        if (service != null) {
-            return new SSLContext((SSLContextSpi) service.newInstance(null), provider, algorithm);
+        final ServiceCache.Entry entry = ServiceCache.find("SSLContext", algorithm, provider);
+        if (entry != null) {
+            return new SSLContext((SSLContextSpi) entry.newInstance(), provider, algorithm);
         }
         throw new NoSuchAlgorithmException();
     }
@@ -90,9 +87,9 @@ public class SSLContext {
     public static SSLContext getInstance(String algorithm, Provider provider) throws NoSuchAlgorithmException, NullPointerException, IllegalArgumentException {
         if (algorithm == null) throw new NullPointerException();
         if (provider == null) throw new IllegalArgumentException();
-        final Provider.Service service = provider.getService("SSLContext", algorithm);
-        if (service != null) {
-            return new SSLContext((SSLContextSpi) service.newInstance(null), provider, algorithm);
+        final ServiceCache.Entry entry = ServiceCache.find("SSLContext", algorithm, provider);
+        if (entry != null) {
+            return new SSLContext((SSLContextSpi) entry.newInstance(), provider, algorithm);
         }
         throw new NoSuchAlgorithmException();
     }
@@ -133,6 +130,27 @@ public class SSLContext {
         return contextSpi.engineGetClientSessionContext();
     }
 
+    /**
+     * Get the session ticket manager of the server session context.
+     *
+     * @return the manager, or {@code null} if session tickets are not used
+     */
+    public SSLSessionTicketManager getSessionTicketManager() {
+        final SSLSessionContext context = getServerSessionContext();
+        return context == null ? null : context.getSessionTicketManager();
+    }
+
+    /**
+     * Set the session ticket manager of the server session context.
+     *
+     * @throws UnsupportedOperationException if the server session context does not support session tickets
+     */
+    public void setSessionTicketManager(final SSLSessionTicketManager ticketManager) throws UnsupportedOperationException {
+        final SSLSessionContext context = getServerSessionContext();
+        if (context == null) throw new UnsupportedOperationException();
+        context.setSessionTicketManager(ticketManager);
+    }
+
     public SSLParameters getDefaultSSLParameters() {
         return contextSpi.engineGetDefaultSSLParameters();
     }
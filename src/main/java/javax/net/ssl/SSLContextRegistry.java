@@ -0,0 +1,232 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.net.ssl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The {@link SSLContext}s serving each host name, for {@link SNIDispatchingSSLContextSpi}.  The context of a host is
+ * created by the loader the first time the host is asked for, once even when several threads ask at the same time,
+ * and kept by the lower case host name.  Hosts for which the loader returns {@code null} or the default context are
+ * served by the default context, and remembered in a separate table of the same size, so that clients sending made-up
+ * names cannot push out the contexts of real hosts.  Once the registry is full, the least recently used contexts
+ * make room for new ones, and are loaded again when next asked for; loads in progress are never dropped.  A loader
+ * failure is not kept.
+ */
+public final class SSLContextRegistry {
+
+    private final SSLContext defaultContext;
+    private final Function<String, SSLContext> loader;
+    private final int maxContexts;
+    private final ConcurrentHashMap<String, Entry> contexts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Boolean> unknownHosts = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * Construct a new instance.
+     *
+     * @param defaultContext the context for connections without a known host name
+     * @param loader the function creating the context of an ASCII host name, which may return {@code null}
+     * @param maxContexts the maximum number of host names to keep
+     */
+    public SSLContextRegistry(final SSLContext defaultContext, final Function<String, SSLContext> loader, final int maxContexts) {
+        if (defaultContext == null || loader == null) throw new NullPointerException();
+        if (maxContexts <= 0) throw new IllegalArgumentException();
+        this.defaultContext = defaultContext;
+        this.loader = loader;
+        this.maxContexts = maxContexts;
+    }
+
+    public SSLContext getDefaultContext() {
+        return defaultContext;
+    }
+
+    /**
+     * Get the context for a host name, loading it if needed.
+     *
+     * @param hostName the ASCII host name, or {@code null} for the default context
+     * @return the context
+     * @throws RuntimeException if the loader failed
+     */
+    public SSLContext getContext(final String hostName) {
+        if (hostName == null) {
+            return defaultContext;
+        }
+        final String key = hostName.toLowerCase(Locale.ROOT);
+        Entry entry = contexts.get(key);
+        if (entry != null) {
+            entry.use(clock.get());
+        } else {
+            if (unknownHosts.containsKey(key)) {
+                return defaultContext;
+            }
+            final Entry newEntry = new Entry(clock.incrementAndGet(), () -> {
+                loads.increment();
+                return loader.apply(key);
+            });
+            if (contexts.size() >= maxContexts) {
+                makeRoom();
+            }
+            entry = contexts.putIfAbsent(key, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+                entry.run();
+            }
+        }
+        try {
+            final SSLContext context = entry.get();
+            if (context == null || context == defaultContext) {
+                // whoever removes it records it, once
+                if (contexts.remove(key, entry)) {
+                    addUnknownHost(key);
+                }
+                return defaultContext;
+            }
+            return context;
+        } catch (ExecutionException e) {
+            contexts.remove(key, entry);
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the context of " + hostName, e);
+        }
+    }
+
+    /**
+     * Get the context for a host name if it is loaded already, without loading it or waiting for a load.
+     *
+     * @param hostName the ASCII host name, or {@code null} for the default context
+     * @return the context, or {@code null} if it is not loaded
+     */
+    SSLContext getLoadedContext(final String hostName) {
+        if (hostName == null) {
+            return defaultContext;
+        }
+        final String key = hostName.toLowerCase(Locale.ROOT);
+        final Entry entry = contexts.get(key);
+        if (entry == null) {
+            return unknownHosts.containsKey(key) ? defaultContext : null;
+        }
+        if (! entry.isDone()) {
+            return null;
+        }
+        entry.use(clock.get());
+        try {
+            final SSLContext context = entry.get();
+            return context == null ? defaultContext : context;
+        } catch (ExecutionException | InterruptedException ignored) {
+            // the next getContext reports or retries it
+            return null;
+        }
+    }
+
+    /**
+     * Forget the context of a host name, so that it is loaded again when next asked for.
+     */
+    public void invalidate(final String hostName) {
+        if (hostName == null) throw new NullPointerException();
+        final String key = hostName.toLowerCase(Locale.ROOT);
+        contexts.remove(key);
+        unknownHosts.remove(key);
+    }
+
+    public void invalidateAll() {
+        contexts.clear();
+        unknownHosts.clear();
+    }
+
+    public int size() {
+        return contexts.size();
+    }
+
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    private void makeRoom() {
+        // loads in progress are left alone, dropping one would let the host be loaded a second time
+        final long[] uses = new long[contexts.size()];
+        int count = 0;
+        for (Entry entry : contexts.values()) {
+            if (entry.isDone() && count < uses.length) {
+                uses[count ++] = entry.lastUse;
+            }
+        }
+        int excess = Math.min(count, contexts.size() - maxContexts + Math.max(1, maxContexts >> 4));
+        if (excess <= 0) {
+            return;
+        }
+        Arrays.sort(uses, 0, count);
+        final long oldest = uses[excess - 1];
+        for (Iterator<Entry> iterator = contexts.values().iterator(); excess > 0 && iterator.hasNext();) {
+            final Entry entry = iterator.next();
+            if (entry.isDone() && entry.lastUse <= oldest) {
+                iterator.remove();
+                excess--;
+            }
+        }
+    }
+
+    private void addUnknownHost(final String key) {
+        // names nobody serves are worth the same, so arbitrary ones make room
+        if (unknownHosts.size() >= maxContexts) {
+            int excess = Math.max(1, maxContexts >> 4);
+            for (Iterator<String> iterator = unknownHosts.keySet().iterator(); excess > 0 && iterator.hasNext(); excess--) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        unknownHosts.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * The load of a host's context, stamped with the registry clock when last asked for.
+     */
+    static final class Entry extends FutureTask<SSLContext> {
+        volatile long lastUse;
+
+        Entry(final long lastUse, final Callable<SSLContext> callable) {
+            super(callable);
+            this.lastUse = lastUse;
+        }
+
+        void use(final long now) {
+            // the clock only moves on loads, so hot entries are written rarely
+            if (lastUse != now) {
+                lastUse = now;
+            }
+        }
+    }
+}
@@ -21,8 +21,12 @@ package javax.net.ssl;
 import java.nio.ByteBuffer;
 
 public abstract class SSLEngine {
+    // one-element arrays for the single-buffer overloads, taken out while in use
+    private static final ThreadLocal<ByteBuffer[]> singleBuffers = new ThreadLocal<>();
+
     private String peerHost;
     private int peerPort = -1;
+    private boolean unwrapAllRecords;
 
     protected SSLEngine() {
     }
@@ -41,7 +45,12 @@ public abstract class SSLEngine {
     }
 
     public SSLEngineResult wrap(ByteBuffer src, ByteBuffer dst) throws SSLException {
-        return wrap(new ByteBuffer[] { src }, 0, 1, dst);
+        final ByteBuffer[] srcs = takeSingle(src);
+        try {
+            return wrap(srcs, 0, 1, dst);
+        } finally {
+            returnSingle(srcs);
+        }
     }
 
     public SSLEngineResult wrap(ByteBuffer[] srcs, ByteBuffer dst) throws SSLException {
@@ -50,16 +59,164 @@ public abstract class SSLEngine {
 
     public abstract SSLEngineResult wrap(final ByteBuffer[] srcs, final int offs, final int length, final ByteBuffer dst) throws SSLException;
 
+    public SSLEngineResult wrap(final ByteBuffer[] srcs, final int srcOffs, final int srcLength, final ByteBuffer[] dsts, final int dstOffs, final int dstLength) throws SSLException {
+        checkBounds(srcs, srcOffs, srcLength);
+        checkBounds(dsts, dstOffs, dstLength);
+        int consumed = 0;
+        int produced = 0;
+        int records = 0;
+        int i = dstOffs;
+        final int end = dstOffs + dstLength;
+        SSLEngineResult.Status status = SSLEngineResult.Status.OK;
+        SSLEngineResult.HandshakeStatus handshakeStatus = getHandshakeStatus();
+        while (i < end) {
+            final SSLEngineResult result = wrap(srcs, srcOffs, srcLength, dsts[i]);
+            consumed += result.bytesConsumed();
+            produced += result.bytesProduced();
+            records = addRecords(records, result.recordCount());
+            status = result.getStatus();
+            handshakeStatus = result.getHandshakeStatus();
+            if (status == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                // this one is full, try the next one
+                i++;
+                continue;
+            }
+            if (status != SSLEngineResult.Status.OK) {
+                break;
+            }
+            if (handshakeStatus != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && handshakeStatus != SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                // task, unwrap or FINISHED: the caller has to see it
+                break;
+            }
+            if (result.bytesConsumed() == 0 && result.bytesProduced() == 0 || handshakeStatus == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && ! hasRemaining(srcs, srcOffs, srcLength)) {
+                break;
+            }
+        }
+        if (status == SSLEngineResult.Status.BUFFER_OVERFLOW && produced > 0) {
+            status = SSLEngineResult.Status.OK;
+        }
+        return new SSLEngineResult(status, handshakeStatus, consumed, produced, records);
+    }
+
+    private static int addRecords(final int records, final int more) {
+        // one unknown count makes the total unknown
+        return records < 0 || more < 0 ? -1 : records + more;
+    }
+
+    private static ByteBuffer[] takeSingle(final ByteBuffer buffer) {
+        ByteBuffer[] array = singleBuffers.get();
+        if (array == null) {
+            // first use on this thread, or nested in another single-buffer call
+            array = new ByteBuffer[1];
+        } else {
+            singleBuffers.set(null);
+        }
+        array[0] = buffer;
+        return array;
+    }
+
+    private static void returnSingle(final ByteBuffer[] array) {
+        array[0] = null;
+        singleBuffers.set(array);
+    }
+
+    private static void checkBounds(final ByteBuffer[] buffers, final int offs, final int length) {
+        if (offs < 0 || length < 0 || offs > buffers.length - length) throw new IndexOutOfBoundsException();
+    }
+
+    private static boolean hasRemaining(final ByteBuffer[] buffers, final int offs, final int length) {
+        for (int i = 0; i < length; i ++) {
+            if (buffers[offs + i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer dst) throws SSLException {
-        return unwrap(src, new ByteBuffer[] { dst }, 0, 1);
+        final ByteBuffer[] dsts = takeSingle(dst);
+        try {
+            return unwrapAllRecords ? unwrapRecords(src, dsts, 0, 1) : unwrap(src, dsts, 0, 1);
+        } finally {
+            returnSingle(dsts);
+        }
     }
 
     public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts) throws SSLException {
+        if (unwrapAllRecords) {
+            return unwrapRecords(src, dsts, 0, dsts.length);
+        }
         return unwrap(src, dsts, 0, dsts.length);
     }
 
     public abstract SSLEngineResult unwrap(final ByteBuffer src, final ByteBuffer[] byteBuffers, final int offs, final int length) throws SSLException;
 
+    public SSLEngineResult unwrapRecords(final ByteBuffer src, final ByteBuffer[] dsts, final int offs, final int length) throws SSLException {
+        checkBounds(dsts, offs, length);
+        int consumed = 0;
+        int produced = 0;
+        int records = 0;
+        SSLEngineResult.Status status;
+        SSLEngineResult.HandshakeStatus handshakeStatus;
+        for (;;) {
+            final SSLEngineResult result = unwrap(src, dsts, offs, length);
+            consumed += result.bytesConsumed();
+            produced += result.bytesProduced();
+            records = addRecords(records, result.recordCount());
+            status = result.getStatus();
+            handshakeStatus = result.getHandshakeStatus();
+            if (status != SSLEngineResult.Status.OK) {
+                break;
+            }
+            if (handshakeStatus != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && handshakeStatus != SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                // task, wrap or FINISHED: the caller has to see it
+                break;
+            }
+            if (result.bytesConsumed() == 0 || ! src.hasRemaining()) {
+                break;
+            }
+        }
+        // an underflow or overflow is reported as is, along with what was unwrapped before it
+        return new SSLEngineResult(status, handshakeStatus, consumed, produced, records);
+    }
+
+    public void setUnwrapAllRecords(final boolean unwrapAllRecords) {
+        this.unwrapAllRecords = unwrapAllRecords;
+    }
+
+    public boolean getUnwrapAllRecords() {
+        return unwrapAllRecords;
+    }
+
+    /**
+     * Like {@link #wrap(ByteBuffer, ByteBuffer)}, but reports the result through a reusable holder.  By default this
+     * and the other holder overloads delegate to the overload without a holder, which still allocates the
+     * {@link SSLEngineResult}; providers override them to avoid that.
+     */
+    public void wrap(ByteBuffer src, ByteBuffer dst, SSLEngineResultHolder result) throws SSLException {
+        result.set(wrap(src, dst));
+    }
+
+    public void wrap(ByteBuffer[] srcs, int offs, int length, ByteBuffer dst, SSLEngineResultHolder result) throws SSLException {
+        result.set(wrap(srcs, offs, length, dst));
+    }
+
+    public void wrap(ByteBuffer[] srcs, int srcOffs, int srcLength, ByteBuffer[] dsts, int dstOffs, int dstLength, SSLEngineResultHolder result) throws SSLException {
+        result.set(wrap(srcs, srcOffs, srcLength, dsts, dstOffs, dstLength));
+    }
+
+    public void unwrap(ByteBuffer src, ByteBuffer dst, SSLEngineResultHolder result) throws SSLException {
+        result.set(unwrap(src, dst));
+    }
+
+    /**
+     * Like {@link #unwrap(ByteBuffer, ByteBuffer[], int, int)}, or {@link #unwrapRecords(ByteBuffer, ByteBuffer[], int, int)}
+     * if {@link #getUnwrapAllRecords()} is set, but reports the result through a reusable holder.
+     */
+    public void unwrap(ByteBuffer src, ByteBuffer[] dsts, int offs, int length, SSLEngineResultHolder result) throws SSLException {
+        result.set(unwrapAllRecords ? unwrapRecords(src, dsts, offs, length) : unwrap(src, dsts, offs, length));
+    }
+
     public abstract Runnable getDelegatedTask();
 
     public abstract void closeInbound() throws SSLException;
@@ -115,6 +272,7 @@ public abstract class SSLEngine {
         } else if (getWantClientAuth()) {
             parameters.setWantClientAuth(true);
         }
+        parameters.setUnwrapAllRecords(unwrapAllRecords);
         return parameters;
     }
 
@@ -134,5 +292,8 @@ public abstract class SSLEngine {
         } else {
             setWantClientAuth(false);
         }
+        if (parameters.isUnwrapAllRecordsSet()) {
+            setUnwrapAllRecords(parameters.getUnwrapAllRecords());
+        }
     }
 }
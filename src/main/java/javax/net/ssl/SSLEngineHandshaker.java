@@ -0,0 +1,227 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives an {@link SSLEngine} handshake to completion without blocking the calling thread.  Delegated tasks are run
+ * on the given executor; I/O goes through a {@link Transport}.
+ * <p>
+ * The caller supplies the inbound network and application buffers, both in "fill" mode (ready for {@code put}).
+ * When the returned future completes, they hold whatever the peer sent beyond the end of the handshake.
+ */
+public final class SSLEngineHandshaker {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static final int PENDING = 0;
+    private static final int WAITING = 1;
+    private static final int COMPLETED = 2;
+    private static final int FAILED = 3;
+
+    private final SSLEngine engine;
+    private final Executor taskExecutor;
+    private final Transport transport;
+    private final ByteBuffer netIn;
+    private final ByteBuffer appIn;
+    private final CompletableFuture<SSLSession> future = new CompletableFuture<>();
+    private ByteBuffer netOut;
+
+    private SSLEngineHandshaker(final SSLEngine engine, final Executor taskExecutor, final Transport transport, final ByteBuffer netIn, final ByteBuffer appIn) {
+        this.engine = engine;
+        this.taskExecutor = taskExecutor;
+        this.transport = transport;
+        this.netIn = netIn;
+        this.appIn = appIn;
+    }
+
+    public static CompletableFuture<SSLSession> handshake(final SSLEngine engine, final Executor taskExecutor, final Transport transport, final ByteBuffer netIn, final ByteBuffer appIn) {
+        if (engine == null || taskExecutor == null || transport == null || netIn == null || appIn == null) throw new NullPointerException();
+        final SSLEngineHandshaker handshaker = new SSLEngineHandshaker(engine, taskExecutor, transport, netIn, appIn);
+        try {
+            engine.beginHandshake();
+        } catch (SSLException | RuntimeException e) {
+            handshaker.future.completeExceptionally(e);
+            return handshaker.future;
+        }
+        handshaker.drive();
+        return handshaker.future;
+    }
+
+    private void drive() {
+        try {
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            for (;;) {
+                switch (status) {
+                    case NEED_TASK: {
+                        if (! await(CompletableFuture.runAsync(this::runTasks, taskExecutor), this::drive)) {
+                            return;
+                        }
+                        status = engine.getHandshakeStatus();
+                        break;
+                    }
+                    case NEED_WRAP: {
+                        final SSLEngineResult result = wrap();
+                        if (result.getStatus() == SSLEngineResult.Status.CLOSED && result.bytesProduced() == 0) {
+                            throw new SSLHandshakeException("Engine closed during handshake");
+                        }
+                        status = result.getHandshakeStatus();
+                        if (netOut.hasRemaining()) {
+                            final boolean finished = status == SSLEngineResult.HandshakeStatus.FINISHED;
+                            if (! await(transport.write(netOut), finished ? this::finish : this::drive)) {
+                                return;
+                            }
+                            if (finished) {
+                                finish();
+                                return;
+                            }
+                        }
+                        break;
+                    }
+                    case NEED_UNWRAP: {
+                        final SSLEngineResult result;
+                        if (netIn.position() == 0) {
+                            if (! read()) {
+                                return;
+                            }
+                            break;
+                        }
+                        netIn.flip();
+                        try {
+                            result = engine.unwrap(netIn, appIn);
+                        } finally {
+                            netIn.compact();
+                        }
+                        switch (result.getStatus()) {
+                            case BUFFER_UNDERFLOW: {
+                                if (! read()) {
+                                    return;
+                                }
+                                continue;
+                            }
+                            case BUFFER_OVERFLOW: {
+                                throw new SSLHandshakeException("Application buffer too small for handshake data");
+                            }
+                            case CLOSED: {
+                                throw new SSLHandshakeException("Engine closed during handshake");
+                            }
+                        }
+                        status = result.getHandshakeStatus();
+                        break;
+                    }
+                    case FINISHED:
+                    case NOT_HANDSHAKING: {
+                        finish();
+                        return;
+                    }
+                    default: {
+                        // nothing here would change the engine's state, so asking it again would spin
+                        throw new SSLException("Unsupported handshake status " + status);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    private SSLEngineResult wrap() throws SSLException {
+        ByteBuffer netOut = this.netOut;
+        if (netOut == null) {
+            this.netOut = netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        }
+        for (;;) {
+            netOut.clear();
+            final SSLEngineResult result = engine.wrap(EMPTY, netOut);
+            netOut.flip();
+            if (result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                return result;
+            }
+            final int size = Math.max(engine.getSession().getPacketBufferSize(), netOut.capacity() << 1);
+            this.netOut = netOut = ByteBuffer.allocate(size);
+        }
+    }
+
+    private boolean read() {
+        if (! netIn.hasRemaining()) {
+            future.completeExceptionally(new SSLHandshakeException("Network buffer too small for handshake record"));
+            return false;
+        }
+        return await(transport.read(netIn), this::drive);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Wait for a stage without growing the stack when it completes synchronously, as a direct executor or a
+     * transport with the bytes at hand would.
+     *
+     * @return {@code true} if it completed already and the caller carries on, or {@code false} if
+     *     {@code continuation} runs when it completes, or it failed
+     */
+    private boolean await(final CompletionStage<?> stage, final Runnable continuation) {
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        stage.whenComplete((ignored, t) -> {
+            if (t != null) {
+                state.set(FAILED);
+                future.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+            } else if (! state.compareAndSet(PENDING, COMPLETED)) {
+                // the caller has returned already
+                continuation.run();
+            }
+        });
+        return ! state.compareAndSet(PENDING, WAITING) && state.get() == COMPLETED;
+    }
+
+    private void finish() {
+        if (engine.isInboundDone() || engine.isOutboundDone()) {
+            future.completeExceptionally(new SSLHandshakeException("Engine closed during handshake"));
+        } else {
+            future.complete(engine.getSession());
+        }
+    }
+
+    /**
+     * Non-blocking network I/O for a handshake.
+     */
+    public interface Transport {
+
+        /**
+         * Read some bytes into {@code dst}.  The returned stage completes once at least one byte was read, or
+         * exceptionally on error or end of stream.
+         */
+        CompletionStage<?> read(ByteBuffer dst);
+
+        /**
+         * Write all the remaining bytes of {@code src}.  The returned stage completes once they are all written.
+         */
+        CompletionStage<?> write(ByteBuffer src);
+    }
+}
@@ -23,13 +23,20 @@ public class SSLEngineResult {
     private final HandshakeStatus handshakeStatus;
     private final int bytesConsumed;
     private final int bytesProduced;
+    private final int recordCount;
 
     public SSLEngineResult(final Status status, final HandshakeStatus handshakeStatus, final int bytesConsumed, final int bytesProduced) {
-        if (status == null || handshakeStatus == null || bytesConsumed < 0 || bytesProduced < 0) throw new IllegalArgumentException();
+        // the engine did not say how many records it handled
+        this(status, handshakeStatus, bytesConsumed, bytesProduced, -1);
+    }
+
+    public SSLEngineResult(final Status status, final HandshakeStatus handshakeStatus, final int bytesConsumed, final int bytesProduced, final int recordCount) {
+        if (status == null || handshakeStatus == null || bytesConsumed < 0 || bytesProduced < 0 || recordCount < -1) throw new IllegalArgumentException();
         this.status = status;
         this.handshakeStatus = handshakeStatus;
         this.bytesConsumed = bytesConsumed;
         this.bytesProduced = bytesProduced;
+        this.recordCount = recordCount;
     }
 
     public Status getStatus() {
@@ -48,9 +55,16 @@ public class SSLEngineResult {
         return bytesProduced;
     }
 
+    /**
+     * Get the number of TLS records handled, or -1 if the engine did not count them.
+     */
+    public int recordCount() {
+        return recordCount;
+    }
+
     public String toString() {
-        return String.format("Status = %s HandshakeStatus = %s%n" + "bytesConsumed = %d bytesProduced = %d",
-            status, handshakeStatus, Integer.valueOf(bytesConsumed), Integer.valueOf(bytesProduced));
+        return String.format("Status = %s HandshakeStatus = %s%n" + "bytesConsumed = %d bytesProduced = %d recordCount = %d",
+            status, handshakeStatus, Integer.valueOf(bytesConsumed), Integer.valueOf(bytesProduced), Integer.valueOf(recordCount));
     }
 
     public enum HandshakeStatus {
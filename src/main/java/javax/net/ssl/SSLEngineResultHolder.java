@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+
+/**
+ * A reusable, mutable counterpart to {@link SSLEngineResult}.  Instances are not thread-safe; each caller should
+ * keep its own.
+ */
+public final class SSLEngineResultHolder {
+    private Status status;
+    private HandshakeStatus handshakeStatus;
+    private int bytesConsumed;
+    private int bytesProduced;
+    private int recordCount;
+
+    public SSLEngineResultHolder() {
+    }
+
+    public void set(final Status status, final HandshakeStatus handshakeStatus, final int bytesConsumed, final int bytesProduced) {
+        set(status, handshakeStatus, bytesConsumed, bytesProduced, -1);
+    }
+
+    public void set(final Status status, final HandshakeStatus handshakeStatus, final int bytesConsumed, final int bytesProduced, final int recordCount) {
+        if (status == null || handshakeStatus == null || bytesConsumed < 0 || bytesProduced < 0 || recordCount < -1) throw new IllegalArgumentException();
+        this.status = status;
+        this.handshakeStatus = handshakeStatus;
+        this.bytesConsumed = bytesConsumed;
+        this.bytesProduced = bytesProduced;
+        this.recordCount = recordCount;
+    }
+
+    public void set(final SSLEngineResult result) {
+        if (result == null) throw new NullPointerException();
+        status = result.getStatus();
+        handshakeStatus = result.getHandshakeStatus();
+        bytesConsumed = result.bytesConsumed();
+        bytesProduced = result.bytesProduced();
+        recordCount = result.recordCount();
+    }
+
+    public void clear() {
+        status = null;
+        handshakeStatus = null;
+        bytesConsumed = 0;
+        bytesProduced = 0;
+        recordCount = 0;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public HandshakeStatus getHandshakeStatus() {
+        return handshakeStatus;
+    }
+
+    public int bytesConsumed() {
+        return bytesConsumed;
+    }
+
+    public int bytesProduced() {
+        return bytesProduced;
+    }
+
+    /**
+     * Get the number of TLS records handled, or -1 if the engine did not count them.
+     */
+    public int recordCount() {
+        return recordCount;
+    }
+
+    public SSLEngineResult toResult() throws IllegalStateException {
+        if (status == null) throw new IllegalStateException();
+        return new SSLEngineResult(status, handshakeStatus, bytesConsumed, bytesProduced, recordCount);
+    }
+
+    public String toString() {
+        return String.format("Status = %s HandshakeStatus = %s%n" + "bytesConsumed = %d bytesProduced = %d recordCount = %d",
+            status, handshakeStatus, Integer.valueOf(bytesConsumed), Integer.valueOf(bytesProduced), Integer.valueOf(recordCount));
+    }
+}
@@ -35,6 +35,8 @@ public class SSLParameters {
     private List<SNIServerName> serverNames = null;
     private List<SNIMatcher> sniMatchers = null;
     private boolean useCipherSuitesOrder;
+    private boolean unwrapAllRecords;
+    private boolean unwrapAllRecordsSet;
 
     public SSLParameters() {
     }
@@ -155,4 +157,18 @@ public class SSLParameters {
     public final void setUseCipherSuitesOrder(final boolean useCipherSuitesOrder) {
         this.useCipherSuitesOrder = useCipherSuitesOrder;
     }
+
+    public final boolean getUnwrapAllRecords() {
+        return unwrapAllRecords;
+    }
+
+    public final void setUnwrapAllRecords(final boolean unwrapAllRecords) {
+        this.unwrapAllRecords = unwrapAllRecords;
+        unwrapAllRecordsSet = true;
+    }
+
+    // parameters which never had the mode set leave an engine's mode alone
+    final boolean isUnwrapAllRecordsSet() {
+        return unwrapAllRecordsSet;
+    }
 }
@@ -30,4 +30,31 @@ public interface SSLSessionContext {
     int getSessionTimeout();
     void setSessionCacheSize(int size) throws IllegalArgumentException;
     int getSessionCacheSize();
+
+    /**
+     * Get the usage statistics of this context.
+     *
+     * @return the statistics, or {@code null} if this context does not keep any
+     */
+    default SSLSessionContextStatistics getStatistics() {
+        return null;
+    }
+
+    /**
+     * Get the manager used to issue and accept stateless session tickets.
+     *
+     * @return the manager, or {@code null} if session tickets are not used
+     */
+    default SSLSessionTicketManager getSessionTicketManager() {
+        return null;
+    }
+
+    /**
+     * Set the manager used to issue and accept stateless session tickets, or {@code null} to stop using them.
+     *
+     * @throws UnsupportedOperationException if this context does not support session tickets
+     */
+    default void setSessionTicketManager(SSLSessionTicketManager ticketManager) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
 }
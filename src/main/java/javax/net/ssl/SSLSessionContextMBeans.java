@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Registers the {@link SSLSessionContextStatistics} of an {@link SSLContext} as MXBeans, one for the client and one
+ * for the server session context, named
+ * {@code javax.net.ssl:type=SSLSessionContext,context=<name>,side=client|server}.
+ */
+public final class SSLSessionContextMBeans {
+
+    private SSLSessionContextMBeans() {
+    }
+
+    /**
+     * Register the session statistics of a context.  Session contexts which keep no statistics are skipped.
+     *
+     * @param server the MBean server
+     * @param context the SSL context
+     * @param name the name identifying the context
+     * @return the names registered
+     * @throws JMException if registration fails, in which case nothing remains registered
+     */
+    public static List<ObjectName> register(final MBeanServer server, final SSLContext context, final String name) throws JMException {
+        if (server == null || context == null || name == null) throw new NullPointerException();
+        final List<ObjectName> names = new ArrayList<>(2);
+        try {
+            register(server, context.getClientSessionContext(), name, "client", names);
+            register(server, context.getServerSessionContext(), name, "server", names);
+        } catch (JMException | RuntimeException e) {
+            unregister(server, names);
+            throw e;
+        }
+        return names;
+    }
+
+    /**
+     * Unregister names returned by {@link #register(MBeanServer, SSLContext, String)}.  Names no longer registered
+     * are ignored.
+     */
+    public static void unregister(final MBeanServer server, final List<ObjectName> names) {
+        if (server == null || names == null) throw new NullPointerException();
+        for (ObjectName objectName : names) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException ignored) {
+                // already gone
+            }
+        }
+    }
+
+    public static ObjectName getObjectName(final String name, final String side) throws JMException {
+        return new ObjectName("javax.net.ssl:type=SSLSessionContext,context=" + ObjectName.quote(name) + ",side=" + side);
+    }
+
+    private static void register(final MBeanServer server, final SSLSessionContext sessionContext, final String name, final String side, final List<ObjectName> names) throws JMException {
+        final SSLSessionContextStatistics statistics = sessionContext == null ? null : sessionContext.getStatistics();
+        if (statistics == null) {
+            return;
+        }
+        final ObjectName objectName = getObjectName(name, side);
+        server.registerMBean(new StandardMBean(statistics, SSLSessionContextStatistics.class, true), objectName);
+        names.add(objectName);
+    }
+}
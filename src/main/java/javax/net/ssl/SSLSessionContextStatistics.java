@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+/**
+ * Usage statistics of an {@link SSLSessionContext}, for sizing its cache.  Counts start when the context is created.
+ * The interface doubles as an MXBean interface; see {@link SSLSessionContextMBeans}.
+ */
+public interface SSLSessionContextStatistics {
+
+    /**
+     * Get the number of lookups which found a live session.
+     */
+    long getHitCount();
+
+    /**
+     * Get the number of lookups which found no live session, including those which found an expired one.
+     */
+    long getMissCount();
+
+    /**
+     * Get the number of sessions stored.
+     */
+    long getPutCount();
+
+    /**
+     * Get the number of live sessions removed to make room for others.
+     */
+    long getEvictionCount();
+
+    /**
+     * Get the number of sessions removed because they had timed out.
+     */
+    long getExpirationCount();
+
+    /**
+     * Get the number of sessions currently held.
+     */
+    int getSessionCount();
+
+    /**
+     * Get the configured session cache size.
+     */
+    int getSessionCacheSize();
+
+    /**
+     * Get the share of lookups which found a live session, which is the share of resumption attempts which could
+     * succeed as far as the cache is concerned.
+     *
+     * @return the ratio between 0 and 1, or 0 if there were no lookups
+     */
+    double getResumptionRatio();
+}
@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.security.cert.Certificate;
+
+/**
+ * The resumable state of an {@link SSLSession}, as handed to and from the session contexts which keep sessions in
+ * serialized form.  Everything except the peer certificates is kept by value.
+ */
+public final class SSLSessionState {
+    private final byte[] id;
+    private final byte[] masterSecret;
+    private final String cipherSuite;
+    private final String protocol;
+    private final String peerHost;
+    private final int peerPort;
+    private final Certificate[] peerCertificates;
+    private final long creationTime;
+    private final long lastAccessedTime;
+
+    public SSLSessionState(final byte[] id, final byte[] masterSecret, final String cipherSuite, final String protocol, final String peerHost, final int peerPort, final Certificate[] peerCertificates, final long creationTime, final long lastAccessedTime) {
+        if (id == null || masterSecret == null || cipherSuite == null || protocol == null) throw new NullPointerException();
+        if (id.length == 0 || id.length > 255) throw new IllegalArgumentException();
+        this.id = id.clone();
+        this.masterSecret = masterSecret.clone();
+        this.cipherSuite = cipherSuite;
+        this.protocol = protocol;
+        this.peerHost = peerHost;
+        this.peerPort = peerPort;
+        this.peerCertificates = peerCertificates == null || peerCertificates.length == 0 ? null : peerCertificates.clone();
+        this.creationTime = creationTime;
+        this.lastAccessedTime = lastAccessedTime;
+    }
+
+    public byte[] getId() {
+        return id.clone();
+    }
+
+    public byte[] getMasterSecret() {
+        return masterSecret.clone();
+    }
+
+    public String getCipherSuite() {
+        return cipherSuite;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public String getPeerHost() {
+        return peerHost;
+    }
+
+    public int getPeerPort() {
+        return peerPort;
+    }
+
+    public Certificate[] getPeerCertificates() {
+        return peerCertificates == null ? null : peerCertificates.clone();
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public long getLastAccessedTime() {
+        return lastAccessedTime;
+    }
+
+    byte[] getIdNoClone() {
+        return id;
+    }
+
+    byte[] getMasterSecretNoClone() {
+        return masterSecret;
+    }
+
+    Certificate[] getPeerCertificatesNoClone() {
+        return peerCertificates;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+
+/**
+ * A key for protecting session tickets.  The 16-byte name is sent in the clear at the start of each ticket, so that
+ * the server can find the key again; the key itself is used for AES-GCM.  A key is used to issue tickets from its
+ * activation time until a newer key is activated, and to accept them for as long as they may live after that.
+ */
+public final class SSLSessionTicketKey {
+
+    public static final int NAME_LENGTH = 16;
+
+    private final byte[] name;
+    private final SecretKey key;
+    private final long activationTime;
+
+    public SSLSessionTicketKey(final byte[] name, final SecretKey key, final long activationTime) {
+        if (name == null || key == null) throw new NullPointerException();
+        if (name.length != NAME_LENGTH) throw new IllegalArgumentException();
+        this.name = name.clone();
+        this.key = key;
+        this.activationTime = activationTime;
+    }
+
+    public byte[] getName() {
+        return name.clone();
+    }
+
+    byte[] getNameNoClone() {
+        return name;
+    }
+
+    public SecretKey getKey() {
+        return key;
+    }
+
+    public long getActivationTime() {
+        return activationTime;
+    }
+
+    boolean hasName(final byte[] ticket) {
+        if (ticket.length < NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < NAME_LENGTH; i ++) {
+            if (ticket[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String toString() {
+        return "SSLSessionTicketKey[name=" + Arrays.toString(name) + ", activationTime=" + activationTime + "]";
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Storage for the keys of an {@link SSLSessionTicketManager}.  Servers which should accept each other's tickets
+ * share one store.
+ */
+public interface SSLSessionTicketKeyStore {
+
+    /**
+     * Load the stored keys.
+     *
+     * @return the keys, empty if there are none yet
+     */
+    List<SSLSessionTicketKey> loadKeys() throws IOException;
+
+    /**
+     * Replace the stored keys.
+     */
+    void storeKeys(List<SSLSessionTicketKey> keys) throws IOException;
+
+    /**
+     * Load the stored keys, pass them to {@code update} and store what it returns, unless that is the very list it was
+     * given.  Stores shared between servers should override this to exclude concurrent updates; the default is not
+     * atomic.
+     *
+     * @return the keys after the update
+     */
+    default List<SSLSessionTicketKey> updateKeys(final UnaryOperator<List<SSLSessionTicketKey>> update) throws IOException {
+        final List<SSLSessionTicketKey> keys = loadKeys();
+        final List<SSLSessionTicketKey> updated = update.apply(keys);
+        if (updated != keys) {
+            storeKeys(updated);
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and accepts stateless session tickets: the session state, sealed with AES-GCM under a key shared through an
+ * {@link SSLSessionTicketKeyStore}, so that resuming a session needs no per-session state on any server.
+ * <p>
+ * A new key is generated every rotation period.  It is written to the store half a period before it starts being
+ * used, which gives servers reloading the store at least that long to learn it before its first ticket reaches
+ * them.  A key replaced by a newer one is still accepted for the ticket lifetime, and then dropped.  The store is
+ * checked every quarter period on the given executor, so issuing and accepting tickets never wait for it; a failing
+ * store leaves the current keys in use.
+ * <p>
+ * A ticket is the key name, a 12-byte nonce and the encrypted session state including its peer certificates.
+ */
+public final class SSLSessionTicketManager {
+
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final int KEY_LENGTH = 32;
+    private static final int MAX_STATE_SIZE = 65536;
+
+    private static final ThreadLocal<Cipher> cipherCache = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final SSLSessionTicketKeyStore keyStore;
+    private final long rotationPeriod;
+    private final long ticketLifetime;
+    private final SecureRandom random = new SecureRandom();
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    private final ScheduledFuture<?> task;
+    private volatile SSLSessionTicketKey[] keys;
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Construct a new instance, loading the keys from the store and adding one if needed.
+     *
+     * @param keyStore the key store
+     * @param executor the executor to check the store on
+     * @param rotationPeriod how long each key is used to issue tickets
+     * @param ticketLifetime how long a ticket is accepted after the session was created
+     * @param unit the unit of both durations
+     * @throws IOException if the key store cannot be read or written
+     */
+    public SSLSessionTicketManager(final SSLSessionTicketKeyStore keyStore, final ScheduledExecutorService executor, final long rotationPeriod, final long ticketLifetime, final TimeUnit unit) throws IOException {
+        if (keyStore == null || executor == null || unit == null) throw new NullPointerException();
+        if (rotationPeriod <= 0 || ticketLifetime <= 0) throw new IllegalArgumentException();
+        this.keyStore = keyStore;
+        this.rotationPeriod = unit.toMillis(rotationPeriod);
+        this.ticketLifetime = unit.toMillis(ticketLifetime);
+        if (this.rotationPeriod < 4) throw new IllegalArgumentException();
+        // the first load happens on the caller's thread, so that a broken store fails construction
+        rotate(System.currentTimeMillis());
+        final long checkPeriod = this.rotationPeriod / 4;
+        task = executor.scheduleWithFixedDelay(this::check, checkPeriod, checkPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Seal a session state into a ticket.
+     *
+     * @param state the session state
+     * @return the ticket, or {@code null} if the state is too large
+     */
+    public byte[] issueTicket(final SSLSessionState state) {
+        if (state == null) throw new NullPointerException();
+        final SSLSessionTicketKey key = currentKey(System.currentTimeMillis());
+        ByteBuffer plain = ByteBuffer.allocate(1024);
+        while (! SessionStateCodec.encodeInline(state, plain)) {
+            if (plain.capacity() == MAX_STATE_SIZE) {
+                return null;
+            }
+            plain = ByteBuffer.allocate(plain.capacity() << 2);
+        }
+        final byte[] name = key.getNameNoClone();
+        final byte[] ticket = new byte[name.length + NONCE_LENGTH + plain.position() + TAG_LENGTH];
+        System.arraycopy(name, 0, ticket, 0, name.length);
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        System.arraycopy(nonce, 0, ticket, name.length, NONCE_LENGTH);
+        try {
+            final Cipher cipher = cipherCache.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key.getKey(), new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(name);
+            cipher.doFinal(plain.array(), 0, plain.position(), ticket, name.length + NONCE_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        issued.increment();
+        return ticket;
+    }
+
+    /**
+     * Open a ticket issued by this or a cooperating manager.
+     *
+     * @param ticket the ticket
+     * @return the session state, or {@code null} if the ticket was rejected
+     */
+    public SSLSessionState openTicket(final byte[] ticket) {
+        if (ticket == null) throw new NullPointerException();
+        final long now = System.currentTimeMillis();
+        final SSLSessionTicketKey key = findKey(ticket, now);
+        if (key == null || ticket.length < SSLSessionTicketKey.NAME_LENGTH + NONCE_LENGTH + TAG_LENGTH) {
+            rejected.increment();
+            return null;
+        }
+        final int offset = SSLSessionTicketKey.NAME_LENGTH + NONCE_LENGTH;
+        final byte[] plain;
+        try {
+            final Cipher cipher = cipherCache.get();
+            cipher.init(Cipher.DECRYPT_MODE, key.getKey(), new GCMParameterSpec(TAG_LENGTH * 8, ticket, SSLSessionTicketKey.NAME_LENGTH, NONCE_LENGTH));
+            cipher.updateAAD(ticket, 0, SSLSessionTicketKey.NAME_LENGTH);
+            plain = cipher.doFinal(ticket, offset, ticket.length - offset);
+        } catch (GeneralSecurityException e) {
+            rejected.increment();
+            return null;
+        }
+        final SSLSessionState state;
+        try {
+            state = SessionStateCodec.decode(ByteBuffer.wrap(plain), 0, null);
+        } catch (RuntimeException e) {
+            rejected.increment();
+            return null;
+        }
+        if (state == null || now - state.getCreationTime() >= ticketLifetime) {
+            rejected.increment();
+            return null;
+        }
+        accepted.increment();
+        return state;
+    }
+
+    /**
+     * Reload the keys from the store now, generating and storing a new key if one is due.
+     *
+     * @throws IOException if the key store cannot be read or written
+     */
+    public void rotate() throws IOException {
+        maintenanceLock.lock();
+        try {
+            rotate(System.currentTimeMillis());
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Stop checking the store.  The keys already loaded stay in use.
+     */
+    public void close() {
+        task.cancel(false);
+    }
+
+    public long getRotationPeriod(final TimeUnit unit) {
+        return unit.convert(rotationPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    public long getTicketLifetime(final TimeUnit unit) {
+        return unit.convert(ticketLifetime, TimeUnit.MILLISECONDS);
+    }
+
+    public long getIssuedCount() {
+        return issued.sum();
+    }
+
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private SSLSessionTicketKey currentKey(final long now) {
+        final SSLSessionTicketKey[] keys = this.keys;
+        // keys are newest first; a key not yet active is only there to be accepted early
+        for (SSLSessionTicketKey key : keys) {
+            if (key.getActivationTime() <= now) {
+                return key;
+            }
+        }
+        return keys[keys.length - 1];
+    }
+
+    private SSLSessionTicketKey findKey(final byte[] ticket, final long now) {
+        final SSLSessionTicketKey[] keys = this.keys;
+        for (int i = 0; i < keys.length; i ++) {
+            if (keys[i].hasName(ticket)) {
+                return isRetired(i == 0 ? null : keys[i - 1], now) ? null : keys[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determine whether a key has been replaced for longer than a ticket lives, given the next newer key.
+     */
+    private boolean isRetired(final SSLSessionTicketKey newer, final long now) {
+        // a key issues tickets until the next one is activated, and the last of them live on for the ticket lifetime
+        return newer != null && now - newer.getActivationTime() >= ticketLifetime;
+    }
+
+    private void check() {
+        try {
+            rotate();
+        } catch (IOException ignored) {
+            // keep going with what we have, and try again next time
+        }
+    }
+
+    private void rotate(final long now) throws IOException {
+        // one update, so that servers rotating at the same time cannot drop each other's keys
+        final List<SSLSessionTicketKey> live = new ArrayList<>(keyStore.updateKeys(loaded -> update(loaded, now)));
+        sortNewestFirst(live);
+        keys = live.toArray(new SSLSessionTicketKey[live.size()]);
+    }
+
+    private static void sortNewestFirst(final List<SSLSessionTicketKey> keys) {
+        keys.sort((a, b) -> Long.compare(b.getActivationTime(), a.getActivationTime()));
+    }
+
+    /**
+     * Drop the retired keys and add the next key if it is due.
+     *
+     * @return the new keys, or {@code loaded} itself if nothing changed
+     */
+    private List<SSLSessionTicketKey> update(final List<SSLSessionTicketKey> loaded, final long now) {
+        final List<SSLSessionTicketKey> sorted = new ArrayList<>(loaded);
+        sortNewestFirst(sorted);
+        final List<SSLSessionTicketKey> live = new ArrayList<>(loaded.size() + 1);
+        for (int i = 0; i < sorted.size(); i ++) {
+            if (! isRetired(i == 0 ? null : sorted.get(i - 1), now)) {
+                live.add(sorted.get(i));
+            }
+        }
+        final SSLSessionTicketKey newest = live.isEmpty() ? null : live.get(0);
+        boolean changed = live.size() != loaded.size();
+        if (newest == null) {
+            // nobody to coordinate with yet
+            live.add(generateKey(now));
+            changed = true;
+        } else if (now >= newest.getActivationTime() + rotationPeriod / 2) {
+            live.add(generateKey(Math.max(now + rotationPeriod / 2, newest.getActivationTime() + rotationPeriod)));
+            changed = true;
+        }
+        return changed ? live : loaded;
+    }
+
+    private SSLSessionTicketKey generateKey(final long activationTime) {
+        final byte[] name = new byte[SSLSessionTicketKey.NAME_LENGTH];
+        final byte[] key = new byte[KEY_LENGTH];
+        random.nextBytes(name);
+        random.nextBytes(key);
+        return new SSLSessionTicketKey(name, new SecretKeySpec(key, "AES"), activationTime);
+    }
+}
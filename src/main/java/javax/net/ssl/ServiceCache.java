@@ -0,0 +1,226 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Resolution cache for the {@code getInstance} methods of the engine classes in this package.
+ * <p>
+ * {@link Security#getProviders()} copies the provider array, so it is asked at most once a second rather than on
+ * each lookup; a provider installed or removed in between is noticed by the next check.  Only installed providers are
+ * cached; lookups against any other {@code Provider} instance are resolved afresh each time, so that the cache never
+ * keeps such a provider (or its class loader) alive.
+ */
+final class ServiceCache {
+
+    // bound on entries, mostly relevant for lookups against uninstalled Provider instances
+    private static final int MAX_SIZE = 256;
+
+    private static final MethodType NO_ARG_CONSTRUCTOR = MethodType.methodType(void.class);
+    private static final MethodType FACTORY = MethodType.methodType(Object.class);
+    private static final MethodHandle NONE = MethodHandles.constant(Object.class, null);
+    private static final long RECHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final AtomicReference<State> stateRef = new AtomicReference<>(new State(new Provider[0], System.nanoTime() - RECHECK_NANOS));
+
+    private ServiceCache() {
+    }
+
+    static Entry find(final String type, final String algorithm) {
+        final State state = getState();
+        final Key key = new Key(type, algorithm, null);
+        Entry entry = state.entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        for (Provider provider : state.providers) {
+            final Provider.Service service = provider.getService(type, algorithm);
+            if (service != null) {
+                return state.put(key, new Entry(provider, service));
+            }
+        }
+        return null;
+    }
+
+    static Entry find(final String type, final String algorithm, final Provider provider) {
+        final State state = getState();
+        if (! state.isInstalled(provider)) {
+            final Provider.Service service = provider.getService(type, algorithm);
+            return service == null ? null : new Entry(provider, service);
+        }
+        final Key key = new Key(type, algorithm, provider);
+        Entry entry = state.entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        final Provider.Service service = provider.getService(type, algorithm);
+        return service == null ? null : state.put(key, new Entry(provider, service));
+    }
+
+    private static State getState() {
+        State state = stateRef.get();
+        final long now = System.nanoTime();
+        if (now - state.checked < RECHECK_NANOS) {
+            return state;
+        }
+        final Provider[] current = Security.getProviders();
+        for (;;) {
+            if (state.matches(current)) {
+                // same providers, keep the entries
+                state.checked = now;
+                return state;
+            }
+            final State newState = new State(current, now);
+            if (stateRef.compareAndSet(state, newState)) {
+                return newState;
+            }
+            state = stateRef.get();
+        }
+    }
+
+    static final class Entry {
+        private final Provider provider;
+        private final Provider.Service service;
+        private volatile MethodHandle factory;
+
+        Entry(final Provider provider, final Provider.Service service) {
+            this.provider = provider;
+            this.service = service;
+        }
+
+        Provider getProvider() {
+            return provider;
+        }
+
+        Object newInstance() throws NoSuchAlgorithmException {
+            MethodHandle factory = this.factory;
+            if (factory == null) {
+                this.factory = factory = createFactory();
+            }
+            if (factory == NONE) {
+                return service.newInstance(null);
+            }
+            try {
+                return (Object) factory.invokeExact();
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                // as Provider.Service.newInstance() does
+                throw new NoSuchAlgorithmException("Error constructing implementation (algorithm: " + service.getAlgorithm() + ", provider: " + provider.getName() + ", class: " + service.getClassName() + ")", t);
+            }
+        }
+
+        private MethodHandle createFactory() {
+            // subclasses of Provider.Service may do their own thing in newInstance(), so leave them to it
+            if (service.getClass() != Provider.Service.class) {
+                return NONE;
+            }
+            try {
+                final ClassLoader providerLoader = provider.getClass().getClassLoader();
+                final ClassLoader classLoader = providerLoader == null ? ServiceCache.class.getClassLoader() : providerLoader;
+                // not initialized here on either path; that happens on first construction
+                final Class<?> clazz = Class.forName(service.getClassName(), false, classLoader);
+                return MethodHandles.publicLookup().findConstructor(clazz, NO_ARG_CONSTRUCTOR).asType(FACTORY);
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // let Provider.Service report the problem
+                return NONE;
+            }
+        }
+    }
+
+    static final class State {
+        private final Provider[] providers;
+        private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+        private volatile long checked;
+
+        State(final Provider[] providers, final long checked) {
+            this.providers = providers;
+            this.checked = checked;
+        }
+
+        boolean isInstalled(final Provider provider) {
+            for (Provider installed : providers) {
+                if (installed == provider) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean matches(final Provider[] current) {
+            final Provider[] providers = this.providers;
+            if (providers.length != current.length) {
+                return false;
+            }
+            for (int i = 0; i < providers.length; i ++) {
+                // identity, not Properties equality
+                if (providers[i] != current[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Entry put(final Key key, final Entry entry) {
+            if (entries.size() >= MAX_SIZE) {
+                return entry;
+            }
+            final Entry appearing = entries.putIfAbsent(key, entry);
+            return appearing == null ? entry : appearing;
+        }
+    }
+
+    static final class Key {
+        private final String type;
+        private final String algorithm;
+        private final Provider provider;
+        private final int hashCode;
+
+        Key(final String type, final String algorithm, final Provider provider) {
+            this.type = type;
+            this.algorithm = algorithm;
+            this.provider = provider;
+            int hc = type.hashCode();
+            hc = 31 * hc + algorithm.hashCode();
+            hc = 31 * hc + System.identityHashCode(provider);
+            hashCode = hc;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && equals((Key) obj);
+        }
+
+        private boolean equals(final Key other) {
+            return hashCode == other.hashCode && provider == other.provider && type.equals(other.type) && algorithm.equals(other.algorithm);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
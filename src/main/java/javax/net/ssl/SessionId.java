@@ -0,0 +1,51 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.util.Arrays;
+
+/**
+ * A session ID used as a hash key.  The array is not copied, so callers must make sure it is not modified while
+ * the key is in use.
+ */
+final class SessionId {
+    private final byte[] bytes;
+    private final int hashCode;
+
+    SessionId(final byte[] bytes) {
+        this.bytes = bytes;
+        hashCode = Arrays.hashCode(bytes);
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    public boolean equals(final Object obj) {
+        return obj instanceof SessionId && equals((SessionId) obj);
+    }
+
+    private boolean equals(final SessionId other) {
+        return hashCode == other.hashCode && Arrays.equals(bytes, other.bytes);
+    }
+
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * A session cache snapshot file, read through a read-only memory mapping.
+ * <p>
+ * Layout, all integers big-endian:
+ * <pre>
+ *     header:  magic(4) version(1) reserved(3) createdAt(8) recordCount(4) chainCount(4) indexSize(4)
+ *              chainTableOffset(4) indexOffset(4) keyCheck(12 nonce + 32 ciphertext)
+ *     records: idLength(1) id nonce(12) length(4) ciphertext        -- encoded SSLSessionState, AAD is the ID
+ *     chains:  reference(32) nonce(12) length(4) ciphertext         -- count(2) (length(4) DER)*, AAD is the reference
+ *     index:   indexSize * (hash(4) recordOffset(4))                -- linear probing, offset 0 is empty
+ * </pre>
+ * Every ciphertext is AES-GCM with a fresh random nonce and a 128-bit tag.  The key check encrypts sixteen zero bytes
+ * with the rest of the header and the whole index as AAD, so opening a snapshot also authenticates the index that
+ * lookups probe.  Session IDs are stored in clear, as they are sent in clear on the wire anyway.
+ */
+final class SessionSnapshot {
+
+    static final int MAGIC = 0x4a535343;
+    static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 80;
+    private static final int KEY_CHECK_OFFSET = 36;
+    private static final int NONCE_LENGTH = 12;
+    private static final int CHAIN_ENTRY_HEADER = SessionStateCodec.CHAIN_REFERENCE_LENGTH + NONCE_LENGTH + 4;
+    private static final int TAG_BITS = 128;
+    private static final int MAX_FILE_SIZE = Integer.MAX_VALUE;
+    private static final byte[] KEY_CHECK = new byte[16];
+
+    private final MappedByteBuffer map;
+    private final SecretKey key;
+    private final long createdAt;
+    private final int recordsEnd;
+    private final int indexOffset;
+    private final int indexMask;
+    private final Map<SessionId, Integer> chainOffsets;
+    // index positions which were promoted or removed since the snapshot was opened
+    private final AtomicLongArray dead;
+
+    private SessionSnapshot(final MappedByteBuffer map, final SecretKey key, final long createdAt, final int recordsEnd, final int indexOffset, final int indexSize, final Map<SessionId, Integer> chainOffsets) {
+        this.map = map;
+        this.key = key;
+        this.createdAt = createdAt;
+        this.recordsEnd = recordsEnd;
+        this.indexOffset = indexOffset;
+        indexMask = indexSize - 1;
+        this.chainOffsets = chainOffsets;
+        dead = new AtomicLongArray((indexSize + 63) >>> 6);
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    static SessionSnapshot open(final Path file, final SecretKey key) throws IOException, GeneralSecurityException {
+        final MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > MAX_FILE_SIZE) {
+                throw new IOException("Not a session snapshot: " + file);
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (map.getInt(0) != MAGIC) {
+            throw new IOException("Not a session snapshot: " + file);
+        }
+        if (map.get(4) != VERSION) {
+            throw new IOException("Unsupported session snapshot version " + map.get(4));
+        }
+        final long createdAt = map.getLong(8);
+        final int chainCount = map.getInt(20);
+        final int indexSize = map.getInt(24);
+        final int chainTableOffset = map.getInt(28);
+        final int indexOffset = map.getInt(32);
+        final int capacity = map.capacity();
+        if (Integer.bitCount(indexSize) != 1 || chainCount < 0 || chainTableOffset < HEADER_SIZE || chainTableOffset > capacity || indexOffset < HEADER_SIZE || indexOffset + (long) indexSize * 8 > capacity) {
+            throw new IOException("Corrupt session snapshot: " + file);
+        }
+        final byte[] header = new byte[KEY_CHECK_OFFSET];
+        map.duplicate().get(header);
+        final ByteBuffer index = map.duplicate();
+        index.position(indexOffset).limit(indexOffset + indexSize * 8);
+        // throws AEADBadTagException on a wrong key, or a tampered header or index
+        decrypt(key, map, KEY_CHECK_OFFSET, KEY_CHECK_OFFSET + NONCE_LENGTH, HEADER_SIZE - KEY_CHECK_OFFSET - NONCE_LENGTH, header, index);
+        final Map<SessionId, Integer> chainOffsets = new HashMap<>();
+        int offset = chainTableOffset;
+        for (int i = 0; i < chainCount; i ++) {
+            if (offset > capacity - CHAIN_ENTRY_HEADER) {
+                throw new IOException("Truncated session snapshot: " + file);
+            }
+            final int length = map.getInt(offset + CHAIN_ENTRY_HEADER - 4);
+            if (length < 0 || length > capacity - offset - CHAIN_ENTRY_HEADER) {
+                throw new IOException("Corrupt session snapshot: " + file);
+            }
+            final byte[] reference = new byte[SessionStateCodec.CHAIN_REFERENCE_LENGTH];
+            final ByteBuffer buf = map.duplicate();
+            buf.position(offset);
+            buf.get(reference);
+            chainOffsets.put(new SessionId(reference), Integer.valueOf(offset));
+            offset += CHAIN_ENTRY_HEADER + length;
+        }
+        return new SessionSnapshot(map, key, createdAt, chainTableOffset, indexOffset, indexSize, chainOffsets);
+    }
+
+    /**
+     * Find, decrypt and claim the record for a session ID.  A record is only ever returned once.
+     */
+    SSLSessionState take(final byte[] id, final int hash) throws GeneralSecurityException {
+        int pos = hash & indexMask;
+        for (int i = 0; i <= indexMask; i ++) {
+            final int entry = indexOffset + (pos << 3);
+            final int recordOffset = map.getInt(entry + 4);
+            if (recordOffset == 0) {
+                return null;
+            }
+            if (map.getInt(entry) == hash && ! isDead(pos) && isRecord(recordOffset) && idEquals(recordOffset, id)) {
+                if (! kill(pos)) {
+                    return null;
+                }
+                final int nonceOffset = recordOffset + 1 + id.length;
+                final byte[] plaintext = decrypt(key, map, nonceOffset, nonceOffset + NONCE_LENGTH + 4, map.getInt(nonceOffset + NONCE_LENGTH), id);
+                return SessionStateCodec.decode(ByteBuffer.wrap(plaintext), 0, this::resolveChain);
+            }
+            pos = pos + 1 & indexMask;
+        }
+        return null;
+    }
+
+    int getIndexSize() {
+        return indexMask + 1;
+    }
+
+    /**
+     * Decrypt the record at an index position without claiming it.
+     *
+     * @return the state, or {@code null} if the position is empty, claimed or unreadable
+     */
+    SSLSessionState peekAt(final int pos) {
+        final int entry = indexOffset + (pos << 3);
+        final int recordOffset = map.getInt(entry + 4);
+        if (recordOffset == 0 || isDead(pos) || ! isRecord(recordOffset)) {
+            return null;
+        }
+        final byte[] id = recordId(recordOffset);
+        final int nonceOffset = recordOffset + 1 + id.length;
+        try {
+            final byte[] plaintext = decrypt(key, map, nonceOffset, nonceOffset + NONCE_LENGTH + 4, map.getInt(nonceOffset + NONCE_LENGTH), id);
+            return SessionStateCodec.decode(ByteBuffer.wrap(plaintext), 0, this::resolveChain);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    void collectIds(final List<byte[]> ids) {
+        for (int pos = 0; pos <= indexMask; pos ++) {
+            final int recordOffset = map.getInt(indexOffset + (pos << 3) + 4);
+            if (recordOffset != 0 && ! isDead(pos) && isRecord(recordOffset)) {
+                ids.add(recordId(recordOffset));
+            }
+        }
+    }
+
+    /**
+     * Check that a record offset from the index points at a record header which lies within the records section.
+     */
+    private boolean isRecord(final int recordOffset) {
+        return recordOffset >= HEADER_SIZE && recordOffset < recordsEnd && recordOffset + 1 + (map.get(recordOffset) & 0xff) + NONCE_LENGTH + 4 <= recordsEnd;
+    }
+
+    private byte[] recordId(final int recordOffset) {
+        final byte[] id = new byte[map.get(recordOffset) & 0xff];
+        for (int i = 0; i < id.length; i ++) {
+            id[i] = map.get(recordOffset + 1 + i);
+        }
+        return id;
+    }
+
+    void remove(final byte[] id, final int hash) {
+        int pos = hash & indexMask;
+        for (int i = 0; i <= indexMask; i ++) {
+            final int entry = indexOffset + (pos << 3);
+            final int recordOffset = map.getInt(entry + 4);
+            if (recordOffset == 0) {
+                return;
+            }
+            if (map.getInt(entry) == hash && isRecord(recordOffset) && idEquals(recordOffset, id)) {
+                kill(pos);
+                return;
+            }
+            pos = pos + 1 & indexMask;
+        }
+    }
+
+    private boolean idEquals(final int recordOffset, final byte[] id) {
+        if ((map.get(recordOffset) & 0xff) != id.length) {
+            return false;
+        }
+        for (int i = 0; i < id.length; i ++) {
+            if (map.get(recordOffset + 1 + i) != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isDead(final int pos) {
+        return (dead.get(pos >>> 6) & 1L << pos) != 0;
+    }
+
+    private boolean kill(final int pos) {
+        final long bit = 1L << pos;
+        for (;;) {
+            final long word = dead.get(pos >>> 6);
+            if ((word & bit) != 0) {
+                return false;
+            }
+            if (dead.compareAndSet(pos >>> 6, word, word | bit)) {
+                return true;
+            }
+        }
+    }
+
+    private Certificate[] resolveChain(final byte[] reference) {
+        final Integer offset = chainOffsets.get(new SessionId(reference));
+        if (offset == null) {
+            return null;
+        }
+        final int nonceOffset = offset.intValue() + reference.length;
+        try {
+            final ByteBuffer plaintext = ByteBuffer.wrap(decrypt(key, map, nonceOffset, nonceOffset + NONCE_LENGTH + 4, map.getInt(nonceOffset + NONCE_LENGTH), reference));
+            final Certificate[] chain = new Certificate[plaintext.getShort()];
+            for (int i = 0; i < chain.length; i ++) {
+                final byte[] der = new byte[plaintext.getInt()];
+                plaintext.get(der);
+                // a new encoding is parsed here, so a bad one makes the chain a miss
+                chain[i] = CertificateInterner.internOwned(der);
+            }
+            return chain;
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    private static byte[] decrypt(final SecretKey key, final ByteBuffer src, final int nonceOffset, final int ciphertextOffset, final int length, final byte[] aad) throws GeneralSecurityException {
+        return decrypt(key, src, nonceOffset, ciphertextOffset, length, aad, null);
+    }
+
+    private static byte[] decrypt(final SecretKey key, final ByteBuffer src, final int nonceOffset, final int ciphertextOffset, final int length, final byte[] aad, final ByteBuffer moreAad) throws GeneralSecurityException {
+        if (nonceOffset < 0 || ciphertextOffset < 0 || length < TAG_BITS / 8 || nonceOffset > src.capacity() - NONCE_LENGTH || length > src.capacity() - ciphertextOffset) {
+            throw new GeneralSecurityException("Corrupt session snapshot");
+        }
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        final byte[] ciphertext = new byte[length];
+        final ByteBuffer buf = src.duplicate();
+        buf.position(nonceOffset);
+        buf.get(nonce);
+        buf.position(ciphertextOffset);
+        buf.get(ciphertext);
+        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+        cipher.updateAAD(aad);
+        if (moreAad != null) {
+            cipher.updateAAD(moreAad);
+        }
+        return cipher.doFinal(ciphertext);
+    }
+
+    /**
+     * Writes a snapshot.  Records are streamed in; the file is moved into place by {@link #commit()}.
+     */
+    static final class Writer implements AutoCloseable {
+        private final Path file;
+        private final Path temp;
+        private final SecretKey key;
+        private final SecureRandom random = new SecureRandom();
+        private final DataOutputStream out;
+        private final Map<SessionId, Certificate[]> chains = new HashMap<>();
+        private int[] hashes = new int[1024];
+        private int[] offsets = new int[1024];
+        private int count;
+        private boolean full;
+        private boolean closed;
+
+        Writer(final Path file, final SecretKey key) throws IOException {
+            this.file = file;
+            this.key = key;
+            final Path dir = file.toAbsolutePath().getParent();
+            temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            final OutputStream os = Files.newOutputStream(temp);
+            out = new DataOutputStream(new BufferedOutputStream(os, 65536));
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        /**
+         * Add a record holding an encoded session state.
+         *
+         * @return {@code false} if the file is full
+         */
+        boolean add(final byte[] id, final int hash, final byte[] encodedState, final Certificate[] chain, final byte[] chainReference) throws IOException, GeneralSecurityException {
+            if (full) {
+                return false;
+            }
+            final byte[] ciphertext = encrypt(encodedState, id);
+            if ((long) out.size() + 1 + id.length + NONCE_LENGTH + 4 + ciphertext.length + 16L * (count + 1) > MAX_FILE_SIZE / 2) {
+                // leave room for chains and index
+                full = true;
+                return false;
+            }
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count << 1);
+                offsets = Arrays.copyOf(offsets, count << 1);
+            }
+            hashes[count] = hash;
+            offsets[count] = out.size();
+            count++;
+            out.writeByte(id.length);
+            out.write(id);
+            out.write(ciphertext, 0, NONCE_LENGTH);
+            out.writeInt(ciphertext.length - NONCE_LENGTH);
+            out.write(ciphertext, NONCE_LENGTH, ciphertext.length - NONCE_LENGTH);
+            if (chainReference != null && chain != null) {
+                chains.putIfAbsent(new SessionId(chainReference), chain);
+            }
+            return true;
+        }
+
+        void commit() throws IOException, GeneralSecurityException {
+            final int chainTableOffset = out.size();
+            for (Map.Entry<SessionId, Certificate[]> entry : chains.entrySet()) {
+                final byte[] reference = entry.getKey().getBytes();
+                final Certificate[] chain = entry.getValue();
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final DataOutputStream plain = new DataOutputStream(bytes);
+                plain.writeShort(chain.length);
+                for (Certificate certificate : chain) {
+                    final byte[] der = certificate.getEncoded();
+                    plain.writeInt(der.length);
+                    plain.write(der);
+                }
+                final byte[] ciphertext = encrypt(bytes.toByteArray(), reference);
+                out.write(reference);
+                out.write(ciphertext, 0, NONCE_LENGTH);
+                out.writeInt(ciphertext.length - NONCE_LENGTH);
+                out.write(ciphertext, NONCE_LENGTH, ciphertext.length - NONCE_LENGTH);
+            }
+            final int indexOffset = out.size();
+            final int indexSize = Integer.highestOneBit(Math.max(2, count * 2) - 1) << 1;
+            final int mask = indexSize - 1;
+            final int[] table = new int[indexSize * 2];
+            for (int i = 0; i < count; i ++) {
+                int pos = hashes[i] & mask;
+                while (table[(pos << 1) + 1] != 0) {
+                    pos = pos + 1 & mask;
+                }
+                table[pos << 1] = hashes[i];
+                table[(pos << 1) + 1] = offsets[i];
+            }
+            final ByteBuffer index = ByteBuffer.allocate(indexSize * 8);
+            index.asIntBuffer().put(table);
+            out.write(index.array());
+            closed = true;
+            out.close();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).put((byte) VERSION).put(new byte[3]).putLong(System.currentTimeMillis());
+            header.putInt(count).putInt(chains.size()).putInt(indexSize).putInt(chainTableOffset).putInt(indexOffset);
+            header.put(encrypt(KEY_CHECK, Arrays.copyOf(header.array(), KEY_CHECK_OFFSET), index.array()));
+            header.flip();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        public void close() throws IOException {
+            if (! closed) {
+                closed = true;
+                out.close();
+            }
+            Files.deleteIfExists(temp);
+        }
+
+        private byte[] encrypt(final byte[] plaintext, final byte[]... aad) throws GeneralSecurityException {
+            final byte[] nonce = new byte[NONCE_LENGTH];
+            random.nextBytes(nonce);
+            final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+            for (byte[] bytes : aad) {
+                cipher.updateAAD(bytes);
+            }
+            final byte[] result = new byte[NONCE_LENGTH + cipher.getOutputSize(plaintext.length)];
+            System.arraycopy(nonce, 0, result, 0, NONCE_LENGTH);
+            cipher.doFinal(plaintext, 0, plaintext.length, result, NONCE_LENGTH);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.function.Function;
+
+/**
+ * Binary form of an {@link SSLSessionState}.  The fixed header comes first so that the ID and times can be read in
+ * place:
+ * <pre>
+ *     version(1) idLength(1) creationTime(8) lastAccessedTime(8) id(idLength)
+ *     secretLength(2) secret cipherSuite protocol peerHost peerPort(4) chainFlag(1) [chain]
+ * </pre>
+ * Strings are a two-byte length (-1 for {@code null}) followed by UTF-8.  The chain is absent (flag 0), a 32-byte
+ * reference to a chain kept elsewhere (flag 1), or inline (flag 2) as the certificate type, a two-byte count and
+ * each encoded certificate preceded by its four-byte length.
+ */
+final class SessionStateCodec {
+
+    static final int VERSION = 1;
+
+    static final int OFFSET_VERSION = 0;
+    static final int OFFSET_ID_LENGTH = 1;
+    static final int OFFSET_CREATION_TIME = 2;
+    static final int OFFSET_LAST_ACCESSED_TIME = 10;
+    static final int OFFSET_ID = 18;
+
+    static final int CHAIN_REFERENCE_LENGTH = 32;
+
+    private static final int CHAIN_NONE = 0;
+    private static final int CHAIN_REFERENCE = 1;
+    private static final int CHAIN_INLINE = 2;
+
+    private SessionStateCodec() {
+    }
+
+    /**
+     * Encode a state at the current position of {@code dst}.
+     *
+     * @return {@code false} if it did not fit, in which case the position of {@code dst} is unspecified
+     */
+    static boolean encode(final SSLSessionState state, final byte[] chainReference, final ByteBuffer dst) {
+        return encode(state, chainReference == null ? CHAIN_NONE : CHAIN_REFERENCE, chainReference, dst);
+    }
+
+    /**
+     * Encode a state, including its peer certificates, at the current position of {@code dst}.
+     *
+     * @return {@code false} if it did not fit, in which case the position of {@code dst} is unspecified
+     */
+    static boolean encodeInline(final SSLSessionState state, final ByteBuffer dst) {
+        final Certificate[] chain = state.getPeerCertificatesNoClone();
+        if (chain == null) {
+            return encode(state, CHAIN_NONE, null, dst);
+        }
+        final byte[] type = utf8(chain[0].getType());
+        int size = stringSize(type) + 2;
+        final byte[][] encoded = new byte[chain.length][];
+        try {
+            for (int i = 0; i < chain.length; i ++) {
+                encoded[i] = chain[i].getEncoded();
+                size += 4 + encoded[i].length;
+            }
+        } catch (CertificateEncodingException e) {
+            return false;
+        }
+        if (size > dst.remaining() || chain.length > Short.MAX_VALUE || ! fits(type)) {
+            return false;
+        }
+        final ByteBuffer chainBytes = ByteBuffer.allocate(size);
+        putString(chainBytes, type);
+        chainBytes.putShort((short) chain.length);
+        for (byte[] bytes : encoded) {
+            chainBytes.putInt(bytes.length);
+            chainBytes.put(bytes);
+        }
+        return encode(state, CHAIN_INLINE, chainBytes.array(), dst);
+    }
+
+    private static boolean encode(final SSLSessionState state, final int chainFlag, final byte[] chainBytes, final ByteBuffer dst) {
+        final byte[] id = state.getIdNoClone();
+        final byte[] secret = state.getMasterSecretNoClone();
+        final byte[] cipherSuite = utf8(state.getCipherSuite());
+        final byte[] protocol = utf8(state.getProtocol());
+        final byte[] peerHost = utf8(state.getPeerHost());
+        final int size = OFFSET_ID + id.length + 2 + secret.length + stringSize(cipherSuite) + stringSize(protocol) + stringSize(peerHost) + 4 + 1 + (chainBytes == null ? 0 : chainBytes.length);
+        if (dst.remaining() < size || secret.length > Short.MAX_VALUE || ! fits(cipherSuite) || ! fits(protocol) || ! fits(peerHost)) {
+            return false;
+        }
+        dst.put((byte) VERSION);
+        dst.put((byte) id.length);
+        dst.putLong(state.getCreationTime());
+        dst.putLong(state.getLastAccessedTime());
+        dst.put(id);
+        dst.putShort((short) secret.length);
+        dst.put(secret);
+        putString(dst, cipherSuite);
+        putString(dst, protocol);
+        putString(dst, peerHost);
+        dst.putInt(state.getPeerPort());
+        dst.put((byte) chainFlag);
+        if (chainBytes != null) {
+            dst.put(chainBytes);
+        }
+        return true;
+    }
+
+    /**
+     * Decode the state found at {@code offset} in {@code src}, without moving its position.
+     *
+     * @return the state, or {@code null} if the version is not understood or the encoding is malformed
+     */
+    static SSLSessionState decode(final ByteBuffer src, final int offset, final Function<byte[], Certificate[]> chainResolver) {
+        final ByteBuffer buf = src.duplicate();
+        buf.position(offset);
+        try {
+            return decode(buf, chainResolver);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static SSLSessionState decode(final ByteBuffer buf, final Function<byte[], Certificate[]> chainResolver) {
+        if (buf.get() != VERSION) {
+            return null;
+        }
+        final byte[] id = new byte[buf.get() & 0xff];
+        final long creationTime = buf.getLong();
+        final long lastAccessedTime = buf.getLong();
+        buf.get(id);
+        final byte[] secret = new byte[length(buf, buf.getShort() & 0xffff)];
+        buf.get(secret);
+        final String cipherSuite = getString(buf);
+        final String protocol = getString(buf);
+        final String peerHost = getString(buf);
+        final int peerPort = buf.getInt();
+        if (id.length == 0 || cipherSuite == null || protocol == null) {
+            return null;
+        }
+        final Certificate[] chain;
+        switch (buf.get()) {
+            case CHAIN_NONE: {
+                chain = null;
+                break;
+            }
+            case CHAIN_REFERENCE: {
+                final byte[] chainReference = new byte[CHAIN_REFERENCE_LENGTH];
+                buf.get(chainReference);
+                chain = chainResolver.apply(chainReference);
+                break;
+            }
+            case CHAIN_INLINE: {
+                chain = getChain(buf);
+                if (chain == null) {
+                    return null;
+                }
+                break;
+            }
+            default: {
+                return null;
+            }
+        }
+        return new SSLSessionState(id, secret, cipherSuite, protocol, peerHost, peerPort, chain, creationTime, lastAccessedTime);
+    }
+
+    static byte[] chainReference(final ByteBuffer src, final int offset) {
+        final ByteBuffer buf = src.duplicate();
+        buf.position(offset + OFFSET_ID + (src.get(offset + OFFSET_ID_LENGTH) & 0xff));
+        final int secretLength = buf.getShort() & 0xffff;
+        buf.position(buf.position() + secretLength);
+        skipString(buf);
+        skipString(buf);
+        skipString(buf);
+        buf.getInt();
+        if (buf.get() != CHAIN_REFERENCE) {
+            return null;
+        }
+        final byte[] chainReference = new byte[CHAIN_REFERENCE_LENGTH];
+        buf.get(chainReference);
+        return chainReference;
+    }
+
+    static boolean idEquals(final ByteBuffer src, final int offset, final byte[] id) {
+        if ((src.get(offset + OFFSET_ID_LENGTH) & 0xff) != id.length) {
+            return false;
+        }
+        final int base = offset + OFFSET_ID;
+        for (int i = 0; i < id.length; i ++) {
+            if (src.get(base + i) != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static byte[] id(final ByteBuffer src, final int offset) {
+        final byte[] id = new byte[src.get(offset + OFFSET_ID_LENGTH) & 0xff];
+        final int base = offset + OFFSET_ID;
+        for (int i = 0; i < id.length; i ++) {
+            id[i] = src.get(base + i);
+        }
+        return id;
+    }
+
+    private static byte[] utf8(final String str) {
+        return str == null ? null : str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean fits(final byte[] bytes) {
+        return bytes == null || bytes.length <= Short.MAX_VALUE;
+    }
+
+    private static int stringSize(final byte[] bytes) {
+        return 2 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(final ByteBuffer dst, final byte[] bytes) {
+        if (bytes == null) {
+            dst.putShort((short) -1);
+        } else {
+            dst.putShort((short) bytes.length);
+            dst.put(bytes);
+        }
+    }
+
+    private static String getString(final ByteBuffer src) {
+        final int length = src.getShort() & 0xffff;
+        if (length == 0xffff) {
+            return null;
+        }
+        final byte[] bytes = new byte[length(src, length)];
+        src.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Certificate[] getChain(final ByteBuffer src) {
+        final String type = getString(src);
+        // each certificate takes at least its four-byte length
+        final Certificate[] chain = new Certificate[length(src, (src.getShort() & 0xffff) << 2) >> 2];
+        try {
+            final CertificateFactory factory = "X.509".equals(type) ? null : CertificateFactory.getInstance(type);
+            for (int i = 0; i < chain.length; i ++) {
+                final byte[] bytes = new byte[length(src, src.getInt())];
+                src.get(bytes);
+                chain[i] = factory == null ? CertificateInterner.internOwned(bytes) : factory.generateCertificate(new ByteArrayInputStream(bytes));
+            }
+        } catch (CertificateException e) {
+            return null;
+        }
+        return chain;
+    }
+
+    /**
+     * Check a length read from {@code src} against what is left of it, so that a corrupt length fails to decode
+     * rather than allocating a negative or huge array.
+     */
+    private static int length(final ByteBuffer src, final int length) throws BufferUnderflowException {
+        if (length < 0 || length > src.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+
+    private static void skipString(final ByteBuffer src) {
+        final int length = src.getShort() & 0xffff;
+        if (length != 0xffff) {
+            src.position(src.position() + length);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters behind {@link SSLSessionContextStatistics}, for the session contexts of this package.
+ */
+final class SessionStatistics implements SSLSessionContextStatistics {
+
+    private final SSLSessionContext context;
+    private final IntSupplier sessionCount;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    SessionStatistics(final SSLSessionContext context, final IntSupplier sessionCount) {
+        this.context = context;
+        this.sessionCount = sessionCount;
+    }
+
+    void hit() {
+        hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    void put() {
+        puts.increment();
+    }
+
+    void eviction() {
+        evictions.increment();
+    }
+
+    void expiration() {
+        expirations.increment();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getPutCount() {
+        return puts.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    public int getSessionCount() {
+        return sessionCount.getAsInt();
+    }
+
+    public int getSessionCacheSize() {
+        return context.getSessionCacheSize();
+    }
+
+    public double getResumptionRatio() {
+        final long hits = this.hits.sum();
+        final long lookups = hits + misses.sum();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    public String toString() {
+        return "SSLSessionContextStatistics[hits=" + getHitCount() + ", misses=" + getMissCount() + ", puts=" + getPutCount() + ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount() + "]";
+    }
+}
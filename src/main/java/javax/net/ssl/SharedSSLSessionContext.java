@@ -0,0 +1,625 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * An {@link SSLSessionContext} kept in a memory-mapped file, so that several processes on one host mapping the same
+ * file can resume each other's sessions.
+ * <p>
+ * The file is a small header followed by fixed-size slots.  A session lives in one of the {@value #PROBE_LENGTH}
+ * slots following its hash; when they are all taken, the oldest session among them is replaced.  Each slot starts
+ * with a 64-bit word holding a version number and, while the slot is being written, the number of the process which
+ * claimed it.  A writer claims a slot by moving its version from even to odd with a compare-and-swap and releases it
+ * by moving it to the next even number; readers copy the slot and retry if the word changed meanwhile, so neither side
+ * ever blocks.  Each context holds a lock on a byte range named by its process number for as long as it is open, so a
+ * claim is only ever taken over once the process which made it has died.
+ * <p>
+ * The file, and every process mapping it, must run as the same user: it is created readable and writable by its owner
+ * only, and an existing file which other users may access is refused.  On top of that, everything in a slot except
+ * the session ID and times is encrypted and the whole record authenticated with AES-GCM under a key supplied by the
+ * caller and never stored in the file, so the master secrets cannot be read, nor sessions forged, from the file alone.
+ * <p>
+ * Peer certificates are stored inline, since nothing else is shared between the processes; sessions which do not
+ * fit in a slot are not stored.  Session timeouts are applied by each reader, so the processes should agree on them.
+ * <p>
+ * The atomic operations need {@code sun.misc.Unsafe}; see {@link #isSupported()}.  On some systems, closing any other
+ * channel to the same file releases the locks of the whole process, so a process should only map a given file once.
+ */
+public class SharedSSLSessionContext implements SSLSessionContext {
+
+    private static final int MAGIC = 0x4a53534d;
+    private static final int FILE_VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int DEFAULT_TIMEOUT = 86400;
+    private static final int DEFAULT_SLOT_SIZE = 2048;
+    private static final int PROBE_LENGTH = 8;
+    private static final int READ_ATTEMPTS = 4;
+    // process number locks live far beyond the end of any file, clear of the header lock
+    private static final long OWNER_LOCK_BASE = 1L << 40;
+    private static final int MAX_OWNERS = 0xffff;
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+
+    // slot header: lock word(8) hash(4) length(4), followed by the encoded state up to and including the ID in clear,
+    // then nonce(12) and the rest of the encoded state encrypted, authenticated along with the part in clear
+    private static final int OFFSET_HASH = 8;
+    private static final int OFFSET_LENGTH = 12;
+    private static final int SLOT_HEADER = 16;
+
+    private final OffHeapSSLSessionContext.SessionFactory sessionFactory;
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+    // kept open: it holds the lock on our process number
+    private final FileChannel channel;
+    private final int owner;
+    private final MappedByteBuffer region;
+    private final long address;
+    private final int slotSize;
+    private final int slots;
+    private final SessionStatistics statistics = new SessionStatistics(this, this::size);
+    private volatile int sessionTimeout = DEFAULT_TIMEOUT;
+    private volatile int sessionCacheSize;
+    private volatile SSLSessionTicketManager ticketManager;
+
+    /**
+     * Map the given file, creating it with room for {@code capacity} sessions of up to {@code slotSize} bytes each if
+     * it does not exist yet.  An existing file keeps the geometry it was created with.
+     *
+     * @param key the AES key which the slots are encrypted with; every process sharing the file needs the same key
+     * @throws IOException if the file cannot be mapped, or other users may access it
+     */
+    public SharedSSLSessionContext(final Path file, final int capacity, final int slotSize, final SecretKey key, final OffHeapSSLSessionContext.SessionFactory sessionFactory) throws IOException {
+        if (file == null || key == null || sessionFactory == null) throw new NullPointerException();
+        if (capacity <= 0 || slotSize < 128 || slotSize > 65536 || (slotSize & 7) != 0) throw new IllegalArgumentException();
+        if ((long) capacity * slotSize > Integer.MAX_VALUE - HEADER_SIZE) throw new IllegalArgumentException();
+        if (! isSupported()) throw new UnsupportedOperationException("Atomic access to shared memory is not available");
+        try {
+            Cipher.getInstance(CIPHER).init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, new byte[NONCE_LENGTH]));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Unusable key", e);
+        }
+        this.sessionFactory = sessionFactory;
+        this.key = key;
+        final FileChannel channel = open(file);
+        boolean ok = false;
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            final FileLock lock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                if (channel.size() == 0) {
+                    header.putInt(MAGIC).putInt(FILE_VERSION).putInt(capacity).putInt(slotSize).clear();
+                    while (header.hasRemaining()) {
+                        channel.write(header, header.position());
+                    }
+                    // zero-filled slots are empty
+                    channel.write(ByteBuffer.allocate(1), HEADER_SIZE + (long) capacity * slotSize - 1);
+                } else {
+                    while (header.hasRemaining()) {
+                        if (channel.read(header, header.position()) == -1) {
+                            throw new IOException("Truncated session cache file " + file);
+                        }
+                    }
+                    header.flip();
+                    if (header.getInt() != MAGIC || header.getInt() != FILE_VERSION) {
+                        throw new IOException("Not a session cache file: " + file);
+                    }
+                }
+            } finally {
+                lock.release();
+            }
+            header.clear();
+            header.position(8);
+            this.slots = header.getInt();
+            this.slotSize = header.getInt();
+            final long size = HEADER_SIZE + (long) slots * this.slotSize;
+            if (slots <= 0 || this.slotSize < 128 || (this.slotSize & 7) != 0 || size > Integer.MAX_VALUE || channel.size() < size) {
+                throw new IOException("Corrupt session cache file " + file);
+            }
+            region = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            owner = register(channel, file);
+            ok = true;
+        } finally {
+            if (! ok) {
+                channel.close();
+            }
+        }
+        this.channel = channel;
+        address = SharedMemoryAccess.address(region);
+        reclaimClaims(owner);
+    }
+
+    public SharedSSLSessionContext(final Path file, final int capacity, final SecretKey key, final OffHeapSSLSessionContext.SessionFactory sessionFactory) throws IOException {
+        this(file, capacity, DEFAULT_SLOT_SIZE, key, sessionFactory);
+    }
+
+    private static FileChannel open(final Path file) throws IOException {
+        final Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, options, PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+        } catch (UnsupportedOperationException ignored) {
+            // not a POSIX file system
+            channel = FileChannel.open(file, options);
+        }
+        final Set<PosixFilePermission> permissions;
+        try {
+            permissions = Files.getPosixFilePermissions(file);
+        } catch (UnsupportedOperationException ignored) {
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (! EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE).containsAll(permissions)) {
+            channel.close();
+            throw new IOException("Session cache file " + file + " is accessible to other users");
+        }
+        return channel;
+    }
+
+    /**
+     * Pick a free process number by locking its byte range.  The lock is held until the channel is closed, which the
+     * operating system does when the process dies.
+     */
+    private static int register(final FileChannel channel, final Path file) throws IOException {
+        for (int owner = 1; owner <= MAX_OWNERS; owner ++) {
+            try {
+                if (channel.tryLock(OWNER_LOCK_BASE + owner, 1, false) != null) {
+                    return owner;
+                }
+            } catch (OverlappingFileLockException ignored) {
+                // taken by another context in this JVM
+            }
+        }
+        throw new IOException("Too many processes share " + file);
+    }
+
+    /**
+     * Determine whether this JVM allows the atomic operations this class needs.
+     */
+    public static boolean isSupported() {
+        return SharedMemoryAccess.isAvailable();
+    }
+
+    public SSLSession getSession(final byte[] sessionId) throws NullPointerException {
+        if (sessionId == null) throw new NullPointerException();
+        final SSLSessionState state = getSessionState(sessionId);
+        return state == null ? null : sessionFactory.createSession(state, this);
+    }
+
+    /**
+     * Get the stored state of a session without building a session view.
+     *
+     * @param sessionId the session ID
+     * @return the state, or {@code null} if there is no live session with that ID
+     */
+    public SSLSessionState getSessionState(final byte[] sessionId) {
+        if (sessionId == null) throw new NullPointerException();
+        final int hash = OffHeapSSLSessionContext.hash(sessionId);
+        final int first = firstSlot(hash);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < PROBE_LENGTH; i ++) {
+            final int slot = (first + i) % slots;
+            final byte[] sealed = read(slot, hash, sessionId);
+            if (sealed != null) {
+                final SSLSessionState state = unseal(sealed);
+                if (state == null || isExpired(state.getCreationTime(), now)) {
+                    if (state != null) {
+                        statistics.expiration();
+                    }
+                    statistics.miss();
+                    return null;
+                }
+                statistics.hit();
+                return state;
+            }
+        }
+        statistics.miss();
+        return null;
+    }
+
+    /**
+     * Store a session state, replacing any state with the same ID.
+     *
+     * @param state the state
+     * @return {@code true} if it was stored, {@code false} if it does not fit in a slot or every candidate slot was
+     *     busy
+     */
+    public boolean putSessionState(final SSLSessionState state) {
+        if (state == null) throw new NullPointerException();
+        final ByteBuffer encoded = ByteBuffer.allocate(slotSize - SLOT_HEADER - NONCE_LENGTH - TAG_LENGTH);
+        if (! SessionStateCodec.encodeInline(state, encoded)) {
+            return false;
+        }
+        final byte[] sealed;
+        try {
+            sealed = seal(encoded.array(), encoded.position());
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+        final byte[] id = state.getIdNoClone();
+        final int hash = OffHeapSSLSessionContext.hash(id);
+        final int first = firstSlot(hash);
+        final long now = System.currentTimeMillis();
+        for (int attempt = 0; attempt < PROBE_LENGTH; attempt ++) {
+            final int slot = chooseSlot(first, hash, id, now);
+            final long claim = claim(slot);
+            if (claim != -1) {
+                try {
+                    final int base = offset(slot);
+                    if (region.getInt(base + OFFSET_LENGTH) >= SessionStateCodec.OFFSET_ID && ! holds(slot, hash, id)) {
+                        if (isExpired(region.getLong(base + SLOT_HEADER + SessionStateCodec.OFFSET_CREATION_TIME), now)) {
+                            statistics.expiration();
+                        } else {
+                            statistics.eviction();
+                        }
+                    }
+                    region.putInt(base + OFFSET_HASH, hash);
+                    region.putInt(base + OFFSET_LENGTH, sealed.length);
+                    final ByteBuffer dst = region.duplicate();
+                    dst.position(base + SLOT_HEADER);
+                    dst.put(sealed);
+                } finally {
+                    release(slot, claim);
+                }
+                statistics.put();
+                return true;
+            }
+            Thread.yield();
+        }
+        return false;
+    }
+
+    public boolean removeSession(final byte[] sessionId) {
+        if (sessionId == null) throw new NullPointerException();
+        final int hash = OffHeapSSLSessionContext.hash(sessionId);
+        final int first = firstSlot(hash);
+        boolean removed = false;
+        for (int i = 0; i < PROBE_LENGTH; i ++) {
+            final int slot = (first + i) % slots;
+            if (! holds(slot, hash, sessionId)) {
+                continue;
+            }
+            final long claim = claim(slot);
+            if (claim == -1) {
+                continue;
+            }
+            try {
+                // check again now that nobody else can change it
+                if (holds(slot, hash, sessionId)) {
+                    region.putInt(offset(slot) + OFFSET_LENGTH, 0);
+                    removed = true;
+                }
+            } finally {
+                release(slot, claim);
+            }
+        }
+        return removed;
+    }
+
+    public Enumeration<byte[]> getIds() {
+        final long now = System.currentTimeMillis();
+        final List<byte[]> ids = new ArrayList<>();
+        for (int slot = 0; slot < slots; slot ++) {
+            final byte[] encoded = read(slot, 0, null);
+            if (encoded != null) {
+                final ByteBuffer buf = ByteBuffer.wrap(encoded);
+                if (! isExpired(buf.getLong(SessionStateCodec.OFFSET_CREATION_TIME), now)) {
+                    ids.add(SessionStateCodec.id(buf, 0));
+                }
+            }
+        }
+        return Collections.enumeration(ids);
+    }
+
+    public void setSessionTimeout(final int seconds) throws IllegalArgumentException {
+        if (seconds < 0) throw new IllegalArgumentException();
+        sessionTimeout = seconds;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Set the session cache size.  The capacity is fixed when the file is created, so the value is only recorded.
+     */
+    public void setSessionCacheSize(final int size) throws IllegalArgumentException {
+        if (size < 0) throw new IllegalArgumentException();
+        sessionCacheSize = size;
+    }
+
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    /**
+     * Get the statistics of this process's use of the file.
+     */
+    public SSLSessionContextStatistics getStatistics() {
+        return statistics;
+    }
+
+    public SSLSessionTicketManager getSessionTicketManager() {
+        return ticketManager;
+    }
+
+    public void setSessionTicketManager(final SSLSessionTicketManager ticketManager) {
+        this.ticketManager = ticketManager;
+    }
+
+    public int getCapacity() {
+        return slots;
+    }
+
+    /**
+     * Get the number of sessions in the file, including any which have expired but not yet been replaced.  This
+     * scans every slot.
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+        int size = 0;
+        for (int slot = 0; slot < slots; slot ++) {
+            if (region.getInt(offset(slot) + OFFSET_LENGTH) >= SessionStateCodec.OFFSET_ID) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    boolean isExpired(final long creationTime, final long now) {
+        final int timeout = sessionTimeout;
+        return timeout != 0 && now - creationTime >= timeout * 1000L;
+    }
+
+    private int firstSlot(final int hash) {
+        return (hash & 0x7fffffff) % slots;
+    }
+
+    private int offset(final int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private long lockWord(final int slot) {
+        return SharedMemoryAccess.getLongVolatile(address + offset(slot));
+    }
+
+    private static boolean isClaimed(final long word) {
+        return (word & 1L << 32) != 0;
+    }
+
+    /**
+     * Claim a slot for writing.
+     *
+     * @return the lock word to release the claim with, or -1 if someone else holds it
+     */
+    private long claim(final int slot) {
+        final long word = lockWord(slot);
+        if (isClaimed(word) && isAlive((int) word)) {
+            return -1;
+        }
+        return takeClaim(slot, word);
+    }
+
+    private long takeClaim(final int slot, final long word) {
+        // a claim left by a dead process moves on to the next odd version
+        final long claimed = ((word >>> 32) + (isClaimed(word) ? 2 : 1) << 32) | owner & 0xffffffffL;
+        if (! SharedMemoryAccess.compareAndSwapLong(address + offset(slot), word, claimed)) {
+            return -1;
+        }
+        if (isClaimed(word)) {
+            // its owner died mid-write, so the contents may be torn
+            region.putInt(offset(slot) + OFFSET_LENGTH, 0);
+        }
+        return claimed;
+    }
+
+    /**
+     * Determine whether the process with the given number may still be writing.
+     */
+    private boolean isAlive(final int processNumber) {
+        if (processNumber == owner) {
+            // another thread of ours
+            return true;
+        }
+        final FileLock lock;
+        try {
+            lock = channel.tryLock(OWNER_LOCK_BASE + processNumber, 1, false);
+        } catch (OverlappingFileLockException | IOException ignored) {
+            // another context in this JVM, or we cannot tell
+            return true;
+        }
+        if (lock == null) {
+            return true;
+        }
+        try {
+            lock.release();
+        } catch (IOException ignored) {
+            // released when the channel is closed
+        }
+        return false;
+    }
+
+    /**
+     * Take over any claims left behind by an earlier process with the same number, which has necessarily died.
+     */
+    private void reclaimClaims(final int processNumber) {
+        for (int slot = 0; slot < slots; slot ++) {
+            final long word = lockWord(slot);
+            if (isClaimed(word) && (int) word == processNumber) {
+                final long claim = takeClaim(slot, word);
+                if (claim != -1) {
+                    release(slot, claim);
+                }
+            }
+        }
+    }
+
+    private void release(final int slot, final long claimed) {
+        SharedMemoryAccess.compareAndSwapLong(address + offset(slot), claimed, (claimed >>> 32) + 1 << 32);
+    }
+
+    /**
+     * Encrypt an encoded state, leaving the part up to and including the ID in clear.
+     */
+    private byte[] seal(final byte[] encoded, final int length) throws GeneralSecurityException {
+        final int clear = SessionStateCodec.OFFSET_ID + (encoded[SessionStateCodec.OFFSET_ID_LENGTH] & 0xff);
+        final byte[] sealed = new byte[length + NONCE_LENGTH + TAG_LENGTH];
+        System.arraycopy(encoded, 0, sealed, 0, clear);
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        System.arraycopy(nonce, 0, sealed, clear, NONCE_LENGTH);
+        final Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(sealed, 0, clear);
+        cipher.doFinal(encoded, clear, length - clear, sealed, clear + NONCE_LENGTH);
+        return sealed;
+    }
+
+    /**
+     * Authenticate, decrypt and decode a slot's contents.
+     *
+     * @return the state, or {@code null} if the contents are not genuine or cannot be decoded
+     */
+    private SSLSessionState unseal(final byte[] sealed) {
+        final int clear = SessionStateCodec.OFFSET_ID + (sealed[SessionStateCodec.OFFSET_ID_LENGTH] & 0xff);
+        try {
+            final byte[] encoded = new byte[sealed.length - NONCE_LENGTH - TAG_LENGTH];
+            System.arraycopy(sealed, 0, encoded, 0, clear);
+            final Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, sealed, clear, NONCE_LENGTH));
+            cipher.updateAAD(sealed, 0, clear);
+            cipher.doFinal(sealed, clear + NONCE_LENGTH, sealed.length - clear - NONCE_LENGTH, encoded, clear);
+            return SessionStateCodec.decode(ByteBuffer.wrap(encoded), 0, null);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Copy the session in a slot, if it is consistent and matches.
+     *
+     * @param id the expected session ID, or {@code null} to accept any session
+     * @return the encoded session, or {@code null}
+     */
+    private byte[] read(final int slot, final int hash, final byte[] id) {
+        final int base = offset(slot);
+        for (int attempt = 0; attempt < READ_ATTEMPTS; attempt ++) {
+            final long before = lockWord(slot);
+            if (isClaimed(before)) {
+                continue;
+            }
+            final int length = region.getInt(base + OFFSET_LENGTH);
+            if (length < SessionStateCodec.OFFSET_ID || length > slotSize - SLOT_HEADER || id != null && region.getInt(base + OFFSET_HASH) != hash) {
+                SharedMemoryAccess.loadFence();
+                if (lockWord(slot) == before) {
+                    return null;
+                }
+                continue;
+            }
+            final byte[] encoded = new byte[length];
+            final ByteBuffer src = region.duplicate();
+            src.position(base + SLOT_HEADER);
+            src.get(encoded);
+            SharedMemoryAccess.loadFence();
+            if (lockWord(slot) != before) {
+                continue;
+            }
+            if (length < SessionStateCodec.OFFSET_ID + (encoded[SessionStateCodec.OFFSET_ID_LENGTH] & 0xff) + NONCE_LENGTH + TAG_LENGTH) {
+                // not something we wrote
+                return null;
+            }
+            return id == null || SessionStateCodec.idEquals(ByteBuffer.wrap(encoded), 0, id) ? encoded : null;
+        }
+        return null;
+    }
+
+    private boolean holds(final int slot, final int hash, final byte[] id) {
+        final int base = offset(slot);
+        return region.getInt(base + OFFSET_LENGTH) >= SessionStateCodec.OFFSET_ID + id.length && region.getInt(base + OFFSET_HASH) == hash && SessionStateCodec.idEquals(region, base + SLOT_HEADER, id);
+    }
+
+    /**
+     * Pick the slot to store a session in: the one already holding it, else a free or expired one, else the one with
+     * the oldest session.  Claimed slots are avoided, unless their hash matches, in which case that slot is returned
+     * so that the caller retries it.  The contents may be changing under us, which only makes for a
+     * worse choice.
+     */
+    private int chooseSlot(final int first, final int hash, final byte[] id, final long now) {
+        int free = -1;
+        int oldest = -1;
+        long oldestTime = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_LENGTH; i ++) {
+            final int slot = (first + i) % slots;
+            if (isClaimed(lockWord(slot))) {
+                if (region.getInt(offset(slot) + OFFSET_HASH) == hash) {
+                    // possibly this very session being written; wait for it rather than store a second copy
+                    return slot;
+                }
+                continue;
+            }
+            if (holds(slot, hash, id)) {
+                return slot;
+            }
+            final int base = offset(slot);
+            if (region.getInt(base + OFFSET_LENGTH) < SessionStateCodec.OFFSET_ID) {
+                if (free == -1) {
+                    free = slot;
+                }
+                continue;
+            }
+            final long creationTime = region.getLong(base + SLOT_HEADER + SessionStateCodec.OFFSET_CREATION_TIME);
+            if (isExpired(creationTime, now)) {
+                if (free == -1) {
+                    free = slot;
+                }
+            } else if (creationTime < oldestTime) {
+                oldest = slot;
+                oldestTime = creationTime;
+            }
+        }
+        return free != -1 ? free : oldest != -1 ? oldest : first;
+    }
+}
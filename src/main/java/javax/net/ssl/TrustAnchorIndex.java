@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.net.ssl;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Trust anchors indexed by subject and by subject key identifier, so that the issuer of a certificate is found
+ * without looking at the other anchors.
+ */
+final class TrustAnchorIndex {
+
+    private static final String SUBJECT_KEY_IDENTIFIER = "2.5.29.14";
+    private static final String AUTHORITY_KEY_IDENTIFIER = "2.5.29.35";
+
+    private final Map<X500Principal, List<X509Certificate>> bySubject = new HashMap<>();
+    private final Map<SessionId, List<X509Certificate>> byKeyIdentifier = new HashMap<>();
+    private final X509Certificate[] anchors;
+
+    TrustAnchorIndex(final Collection<X509Certificate> anchors) {
+        final List<X509Certificate> unique = new ArrayList<>(anchors.size());
+        for (X509Certificate anchor : anchors) {
+            if (isAnchor(anchor)) {
+                continue;
+            }
+            unique.add(anchor);
+            bySubject.computeIfAbsent(anchor.getSubjectX500Principal(), k -> new ArrayList<>(1)).add(anchor);
+            final byte[] keyIdentifier = subjectKeyIdentifier(anchor);
+            if (keyIdentifier != null) {
+                byKeyIdentifier.computeIfAbsent(new SessionId(keyIdentifier), k -> new ArrayList<>(1)).add(anchor);
+            }
+        }
+        this.anchors = unique.toArray(new X509Certificate[unique.size()]);
+    }
+
+    X509Certificate[] getAnchors() {
+        return anchors.clone();
+    }
+
+    int size() {
+        return anchors.length;
+    }
+
+    boolean isAnchor(final X509Certificate certificate) {
+        final List<X509Certificate> candidates = bySubject.get(certificate.getSubjectX500Principal());
+        return candidates != null && candidates.contains(certificate);
+    }
+
+    /**
+     * Find the anchors which may have issued a certificate: those with a matching key identifier if the certificate
+     * names one, else those whose subject is its issuer.
+     */
+    List<X509Certificate> findIssuers(final X509Certificate certificate) {
+        final byte[] keyIdentifier = authorityKeyIdentifier(certificate);
+        if (keyIdentifier != null) {
+            final List<X509Certificate> candidates = byKeyIdentifier.get(new SessionId(keyIdentifier));
+            if (candidates != null) {
+                return candidates;
+            }
+        }
+        final List<X509Certificate> candidates = bySubject.get(certificate.getIssuerX500Principal());
+        return candidates == null ? Collections.<X509Certificate>emptyList() : candidates;
+    }
+
+    static byte[] subjectKeyIdentifier(final X509Certificate certificate) {
+        final byte[] value = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER);
+        if (value == null) {
+            return null;
+        }
+        // OCTET STRING { KeyIdentifier ::= OCTET STRING }
+        final DerReader reader = new DerReader(value);
+        return reader.enter(0x04) && reader.enter(0x04) ? reader.remaining() : null;
+    }
+
+    static byte[] authorityKeyIdentifier(final X509Certificate certificate) {
+        final byte[] value = certificate.getExtensionValue(AUTHORITY_KEY_IDENTIFIER);
+        if (value == null) {
+            return null;
+        }
+        // OCTET STRING { SEQUENCE { [0] IMPLICIT KeyIdentifier OPTIONAL, ... } }
+        final DerReader reader = new DerReader(value);
+        return reader.enter(0x04) && reader.enter(0x30) && reader.enter(0x80) ? reader.remaining() : null;
+    }
+
+    /**
+     * Just enough DER to dig out key identifiers.
+     */
+    static final class DerReader {
+        private final byte[] bytes;
+        private int position;
+        private int limit;
+
+        DerReader(final byte[] bytes) {
+            this.bytes = bytes;
+            limit = bytes.length;
+        }
+
+        /**
+         * Step into the element at the current position if it has the given tag.
+         */
+        boolean enter(final int tag) {
+            if (position + 2 > limit || (bytes[position] & 0xff) != tag) {
+                return false;
+            }
+            int length = bytes[position + 1] & 0xff;
+            int start = position + 2;
+            if (length > 0x80) {
+                final int count = length & 0x7f;
+                if (count > 3 || start + count > limit) {
+                    return false;
+                }
+                length = 0;
+                for (int i = 0; i < count; i ++) {
+                    length = length << 8 | bytes[start++] & 0xff;
+                }
+            } else if (length == 0x80) {
+                // indefinite lengths are not DER
+                return false;
+            }
+            if (start + length > limit) {
+                return false;
+            }
+            position = start;
+            limit = start + length;
+            return true;
+        }
+
+        byte[] remaining() {
+            final byte[] result = new byte[limit - position];
+            System.arraycopy(bytes, position, result, 0, result.length);
+            return result;
+        }
+    }
+}
@@ -47,12 +47,9 @@ public class TrustManagerFactory {
 
     public static TrustManagerFactory getInstance(String algorithm) throws NoSuchAlgorithmException, NullPointerException {
         if (algorithm == null) throw new NullPointerException();
-        final Provider[] providers = Security.getProviders();
-        for (Provider provider : providers) {
-            final Provider.Service service = provider.getService("TrustManagerFactory", algorithm);
-            if (service != null) {
-                return new TrustManagerFactory((TrustManagerFactorySpi) service.newInstance(null), provider, algorithm);
-            }
+        final ServiceCache.Entry entry = ServiceCache.find("TrustManagerFactory", algorithm);
+        if (entry != null) {
+            return new TrustManagerFactory((TrustManagerFactorySpi) entry.newInstance(), entry.getProvider(), algorithm);
         }
         throw new NoSuchAlgorithmException();
     }
@@ -60,18 +57,18 @@ public class TrustManagerFactory {
         if (algorithm == null || providerName == null) throw new NullPointerException();
         final Provider provider = Security.getProvider(providerName);
         if (provider == null) throw new NoSuchProviderException();
-        final Provider.Service service = provider.getService("TrustManagerFactory", algorithm);
-        if (service != null) {
-            return new TrustManagerFactory((TrustManagerFactorySpi) service.newInstance(null), provider, algorithm);
+        final ServiceCache.Entry entry = ServiceCache.find("TrustManagerFactory", algorithm, provider);
+        if (entry != null) {
+            return new TrustManagerFactory((TrustManagerFactorySpi) entry.newInstance(), provider, algorithm);
         }
         throw new NoSuchAlgorithmException();
     }
     public static TrustManagerFactory getInstance(String algorithm, Provider provider) throws NoSuchAlgorithmException, NullPointerException, IllegalArgumentException {
         if (algorithm == null) throw new NullPointerException();
         if (provider == null) throw new IllegalArgumentException();
-        final Provider.Service service = provider.getService("TrustManagerFactory", algorithm);
-        if (service != null) {
-            return new TrustManagerFactory((TrustManagerFactorySpi) service.newInstance(null), provider, algorithm);
+        final ServiceCache.Entry entry = ServiceCache.find("TrustManagerFactory", algorithm, provider);
+        if (entry != null) {
+            return new TrustManagerFactory((TrustManagerFactorySpi) entry.newInstance(), provider, algorithm);
         }
         throw new NoSuchAlgorithmException();
     }
@@ -28,7 +28,7 @@ public abstract class X509ExtendedKeyManager implements X509KeyManager {
         return null;
     }
 
-    public String chooseEngineServerAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+    public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
         return null;
     }
 }